@@ -0,0 +1,56 @@
+/*
+ * Copyright 2018-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.woutis.caramel.logging;
+
+import com.woutis.caramel.logging.async.AsyncMetrics;
+import com.woutis.caramel.logging.async.AsyncSystem;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Verifies that logging-core-lite resolves without Akka and that the AsyncSystem starts on the ring engine.
+ *
+ * @author Kweny
+ * @since 0.0.1
+ */
+class LiteAsyncSystemTests {
+
+    @Test
+    void akkaIsNotOnTheClasspath() {
+        assertThrows(ClassNotFoundException.class, () -> Class.forName("akka.actor.ActorSystem"));
+        assertThrows(ClassNotFoundException.class, () -> Class.forName("scala.Function1"));
+    }
+
+    @Test
+    void asyncSystemStartsOnTheRingEngine() {
+        assertThat(AsyncSystem.instance().backend().name(), is("ring"));
+
+        AsyncMetrics metrics = AsyncSystem.instance().metrics();
+        long enqueued = metrics.getEnqueued() + metrics.getSynchronous();
+        CaramelLogger.getAsyncLogger(LiteAsyncSystemTests.class).warn("lite {}", 1);
+
+        assertThat(metrics.getEnqueued() + metrics.getSynchronous(), is(enqueued + 1));
+        assertThat(AsyncSystem.instance().flush(Duration.ofSeconds(30)), is(true));
+    }
+
+}
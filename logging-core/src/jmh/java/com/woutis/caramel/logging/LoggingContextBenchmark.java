@@ -0,0 +1,89 @@
+/*
+ * Copyright 2018-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.woutis.caramel.logging;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of installing an event's context on a consumer thread: the former {@code set} + {@code release} cycle, which
+ * drops the thread-local instance after every event, against {@link LoggingContext#_bind} / {@link LoggingContext#_unbind()}.
+ *
+ * <p>Run with the GC profiler and compare time and {@code gc.alloc.rate.norm} (bytes per operation):
+ * <pre>
+ * ./gradlew :logging-core:jmh -Pjmh.includes=LoggingContextBenchmark -Pjmh.profilers=gc
+ * </pre>
+ *
+ * @author Kweny
+ * @since 0.0.1
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LoggingContextBenchmark {
+
+    /** 每条日志携带的上下文键数量 */
+    @Param({"4", "16"})
+    private int keys;
+
+    private ContextMap snapshot;
+    private ThreadSnapshot thread;
+
+    @Setup
+    public void setup() {
+        ContextMap snapshot = ContextMap.empty();
+        for (int i = 0; i < this.keys; i++) {
+            snapshot = snapshot.with("key-" + i, "value-" + i);
+        }
+        this.snapshot = snapshot.with("traceId", "4bf92f3577b34da6a3ce929d0e0e4736");
+        this.thread = ThreadSnapshot.current();
+    }
+
+    /** 写入上下文后释放，下一条日志重新创建线程变量 */
+    @Benchmark
+    public Object setAndRelease() {
+        LoggingContext._sourceThread(this.thread);
+        LoggingContext.set(this.snapshot);
+        Object traceId = LoggingContext.get("traceId");
+        LoggingContext.release();
+        return traceId;
+    }
+
+    /** 只替换当前线程实例上的引用 */
+    @Benchmark
+    public Object bindAndUnbind() {
+        LoggingContext._bind(this.snapshot, null, null, this.thread);
+        Object traceId = LoggingContext.get("traceId");
+        LoggingContext._unbind();
+        return traceId;
+    }
+
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2018-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.woutis.caramel.logging.async;
+
+import com.woutis.caramel.logging.ThreadSnapshot;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.event.Level;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Allocation of the {@link AsyncDelivery} life cycle with and without {@link AsyncDeliveryPool}, with producers and the
+ * consumer on different threads as in the Akka engine: three producer threads acquire and fill deliveries and hand
+ * them over through a bounded queue, one consumer thread takes them and releases them to the pool.
+ *
+ * <p>Run with the GC profiler and compare {@code gc.alloc.rate.norm} (bytes per operation):
+ * <pre>
+ * ./gradlew :logging-core:jmh -Pjmh.includes=AsyncDeliveryBenchmark -Pjmh.profilers=gc
+ * </pre>
+ *
+ * @author Kweny
+ * @since 0.0.1
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AsyncDeliveryBenchmark {
+
+    /** 是否通过对象池复用投递对象，否则每条日志新建，处理完毕后由 GC 回收 */
+    @Param({"false", "true"})
+    public boolean recycle;
+
+    private final Logger logger = LoggerFactory.getLogger(AsyncDeliveryBenchmark.class);
+    private final Object[] arguments = {"caramel", 42};
+    private final AsyncDeliveryPool pool = new AsyncDeliveryPool(1024);
+    private final ArrayBlockingQueue<AsyncDelivery> handoff = new ArrayBlockingQueue<>(1024);
+
+    /** 生产者：取出（或新建）并填充投递对象，交给消费者；队列已满时直接归还 */
+    @Benchmark
+    @Group("handoff")
+    @GroupThreads(3)
+    public AsyncDelivery produce() {
+        AsyncDelivery delivery = fill(this.recycle ? this.pool.acquire() : AsyncDelivery.create());
+        if (!this.handoff.offer(delivery) && this.recycle) {
+            this.pool.release(delivery);
+        }
+        return delivery;
+    }
+
+    /** 消费者：取出投递对象，处理完毕后清空并归还 */
+    @Benchmark
+    @Group("handoff")
+    @GroupThreads(1)
+    public AsyncDelivery consume() {
+        AsyncDelivery delivery = this.handoff.poll();
+        if (delivery != null && this.recycle) {
+            this.pool.release(delivery);
+        }
+        return delivery;
+    }
+
+    private AsyncDelivery fill(AsyncDelivery delivery) {
+        return delivery.logger(this.logger)
+                .level(Level.INFO)
+                .message("user {} logged in with code {}")
+                .arguments(this.arguments)
+                .sourceThread(ThreadSnapshot.current());
+    }
+
+}
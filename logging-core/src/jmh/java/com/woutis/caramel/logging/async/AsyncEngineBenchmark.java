@@ -0,0 +1,123 @@
+/*
+ * Copyright 2018-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.woutis.caramel.logging.async;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.Logger;
+import org.slf4j.event.Level;
+
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * End-to-end throughput of an async engine: publish a burst of events and wait until all of them are written.
+ *
+ * <p>Events are spread over {@value #LOGGERS} loggers sharded by logger name (the ring engine always shards by
+ * thread), and every logger simulates blocking appender I/O by parking {@code ioNanos} per event. The virtual-thread
+ * engine is not measured: it only exists in the Java 21 part of the multi-release jar, while JMH runs against the
+ * Java 8 classes.
+ * <pre>
+ * ./gradlew :logging-core:jmh -Pjmh.includes=AsyncEngineBenchmark
+ * </pre>
+ *
+ * @author Kweny
+ * @since 0.0.1
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AsyncEngineBenchmark {
+
+    private static final int BURST = 1000;
+    private static final int LOGGERS = 16;
+
+    @Param({"akka", "ring"})
+    private String engine;
+
+    @Param({"4"})
+    private String shards;
+
+    @Param({"0", "20000"})
+    private long ioNanos;
+
+    private AsyncSystem system;
+    private Logger[] loggers;
+
+    @Setup
+    public void setup() {
+        // 每组参数在独立的 fork 中运行，AsyncSystem 首次访问前设置的引擎参数才会生效
+        System.setProperty("caramel.logging.async.engine", this.engine);
+        System.setProperty("caramel.logging.async.shards", this.shards);
+        System.setProperty("caramel.logging.async.shard-by", AsyncSharding.BY_LOGGER);
+        System.setProperty("caramel.logging.async.shutdown-hook", "false");
+        this.system = AsyncSystem.instance();
+        if (!this.system.backend().name().equals(this.engine)) {
+            throw new IllegalStateException("Engine '" + this.engine + "' is not available on this JVM.");
+        }
+        this.loggers = new Logger[LOGGERS];
+        for (int i = 0; i < LOGGERS; i++) {
+            this.loggers[i] = blockingLogger("benchmark-" + i, this.ioNanos);
+        }
+    }
+
+    /** 输出时阻塞 {@code parkNanos} 的 logger，模拟 appender 的 I/O */
+    private static Logger blockingLogger(String name, long parkNanos) {
+        return (Logger) Proxy.newProxyInstance(Logger.class.getClassLoader(), new Class<?>[] {Logger.class}, (proxy, method, args) -> {
+            if (method.getReturnType() == boolean.class) {
+                return true;
+            }
+            if (method.getReturnType() == String.class) {
+                return name;
+            }
+            if (parkNanos > 0) {
+                LockSupport.parkNanos(parkNanos);
+            }
+            return null;
+        });
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BURST)
+    public boolean burst() {
+        for (int i = 0; i < BURST; i++) {
+            AsyncDelivery delivery = this.system.claim(Level.INFO, null);
+            if (delivery != null) {
+                delivery.logger(this.loggers[i % LOGGERS]).level(Level.INFO).message("event {}").arguments(i);
+                this.system.publish(delivery);
+            }
+        }
+        return this.system.backend().flush(Duration.ofMinutes(1));
+    }
+
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2018-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.woutis.caramel.logging.async;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.Logger;
+import org.slf4j.helpers.NOPLogger;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Latency and CPU trade-offs of the {@link WaitStrategy}s on an {@link AsyncRingBuffer}.
+ *
+ * <p>Every operation publishes one event and waits until the consumer has handled it, so the sampled time is the
+ * hand-off latency. {@code gapNanos} idles the producer before each event to model sparse traffic, where the wake-up
+ * cost of the strategy dominates. The {@code consumerCpuNanos} counter reports the CPU time the consumer thread burned
+ * during each iteration, including while idle:
+ * <pre>
+ * ./gradlew :logging-core:jmh -Pjmh.includes=WaitStrategyBenchmark
+ * </pre>
+ *
+ * @author Kweny
+ * @since 0.0.1
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WaitStrategyBenchmark {
+
+    @Param({"BUSY_SPIN", "YIELD", "BACKOFF", "PARK", "BLOCKING"})
+    private String strategy;
+
+    @Param({"0", "50000"})
+    private long gapNanos;
+
+    private final Logger logger = NOPLogger.NOP_LOGGER;
+    private AsyncRingBuffer ring;
+
+    @Setup
+    public void setup() {
+        this.ring = new AsyncRingBuffer(1024, 1, WaitStrategy.valueOf(this.strategy));
+        this.ring.start("caramel-wait-strategy-benchmark");
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.ring.stop();
+    }
+
+    @Benchmark
+    public long handOff(ConsumerCpu cpu) {
+        if (this.gapNanos > 0) {
+            LockSupport.parkNanos(this.gapNanos);
+        }
+        AsyncDelivery delivery;
+        while ((delivery = this.ring.tryClaim()) == null) {
+            Thread.yield();
+        }
+        long sequence = delivery.sequence;
+        delivery.logger(this.logger).level(org.slf4j.event.Level.INFO).message("hand-off");
+        this.ring.publish(delivery);
+        while (this.ring.consumedSequence() < sequence) {
+            // 等待消费者处理完毕
+        }
+        return sequence;
+    }
+
+    /** 每轮迭代中消费者线程消耗的 CPU 时间 */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class ConsumerCpu {
+
+        private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+        public long consumerCpuNanos;
+
+        private long startCpuNanos;
+
+        @Setup(Level.Iteration)
+        public void start(WaitStrategyBenchmark benchmark) {
+            this.consumerCpuNanos = 0;
+            this.startCpuNanos = THREADS.getThreadCpuTime(benchmark.ring.consumerThread().getId());
+        }
+
+        @TearDown(Level.Iteration)
+        public void stop(WaitStrategyBenchmark benchmark) {
+            this.consumerCpuNanos = THREADS.getThreadCpuTime(benchmark.ring.consumerThread().getId()) - this.startCpuNanos;
+        }
+
+    }
+
+}
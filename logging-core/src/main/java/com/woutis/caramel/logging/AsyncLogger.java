@@ -16,11 +16,15 @@
 
 package com.woutis.caramel.logging;
 
-import akka.actor.ActorRef;
 import com.woutis.caramel.logging.async.AsyncDelivery;
 import com.woutis.caramel.logging.async.AsyncSystem;
+import com.woutis.caramel.logging.async.LocationCapture;
+import com.woutis.caramel.logging.async.LocationMode;
+import com.woutis.caramel.logging.async.MessageRendering;
 import com.woutis.caramel.logging.level.CustomLevel;
+import com.woutis.caramel.logging.message.CaramelMessageFactory;
 import org.slf4j.Marker;
+import org.slf4j.event.Level;
 
 /**
  * async logger wrapper
@@ -30,71 +34,129 @@ import org.slf4j.Marker;
  */
 public class AsyncLogger extends CaramelLogger {
 
+    /** 是否在调用线程上预先渲染消息，见 {@link MessageRendering} */
+    private final boolean eagerRendering;
+
     protected AsyncLogger(String name) {
         super(name);
+        this.eagerRendering = MessageRendering.eager(getName());
     }
 
     protected AsyncLogger(Class<?> clazz) {
         super(clazz);
+        this.eagerRendering = MessageRendering.eager(getName());
     }
 
     protected AsyncLogger(String name, Marker defaultMarker) {
         super(name, defaultMarker);
+        this.eagerRendering = MessageRendering.eager(getName());
     }
 
     protected AsyncLogger(Class<?> clazz, Marker defaultMarker) {
         super(clazz, defaultMarker);
+        this.eagerRendering = MessageRendering.eager(getName());
+    }
+
+    private void doDeliver(Level level, Marker marker, Throwable thrown, String message, Object[] arguments) {
+        AsyncDelivery delivery = AsyncSystem.instance().claim(level, null);
+        if (delivery != null) {
+            doDeliver(delivery.logger(this.logger).level(level), marker, thrown, message, arguments);
+        }
     }
 
-    private void doDeliver(AsyncDelivery delivery) {
-        delivery = delivery
-                .context(LoggingContext.replica())
-                .sourceStackTrace(new Throwable().getStackTrace())
-                .sourceThread(Thread.currentThread());
-        AsyncSystem.instance().actor().tell(delivery, ActorRef.noSender());
+    private void doDeliver(CustomLevel level, Marker marker, Throwable thrown, String message, Object[] arguments) {
+        AsyncDelivery delivery = AsyncSystem.instance().claim(null, level);
+        if (delivery != null) {
+            doDeliver(delivery.logger(this.logger).customLevelHandler(this.customLevelHandler).customLevel(level), marker, thrown, message, arguments);
+        }
+    }
+
+    private void doDeliver(AsyncDelivery delivery, Marker marker, Throwable thrown, String message, Object[] arguments) {
+        try {
+            LocationMode locationMode = LocationCapture.mode();
+            if (this.eagerRendering && isRenderable(thrown, arguments)) {
+                message = CaramelMessageFactory.render(message, arguments);
+                arguments = null;
+            }
+            delivery.marker(marker)
+                    .thrown(thrown)
+                    .message(message).arguments(arguments)
+                    .context(LoggingContext.replica())
+                    .sourceLocation(LocationCapture.captureLocation(locationMode))
+                    .sourceStackTrace(LocationCapture.captureStackTrace(locationMode))
+                    .sourceThread(ThreadSnapshot.current());
+        } finally {
+            AsyncSystem.instance().publish(delivery);
+        }
+    }
+
+    /**
+     * 末尾参数为异常且未显式传入异常时，由底层日志框架按 SLF4J 约定识别，不预先渲染
+     */
+    private static boolean isRenderable(Throwable thrown, Object[] arguments) {
+        if (arguments == null || arguments.length == 0) {
+            return false;
+        }
+        return thrown != null || !(arguments[arguments.length - 1] instanceof Throwable);
     }
 
     private Marker resolveMarker(Marker marker) {
         return marker != null ? marker : this.defaultMarker;
     }
 
+    /**
+     * 在调用线程上预先判断级别是否开启，未开启时直接返回，不再复制上下文、抓取堆栈及投递给异步系统
+     */
+    private boolean isEnabled(Level level, Marker marker) {
+        switch (level) {
+            case ERROR:
+                return marker != null ? this.logger.isErrorEnabled(marker) : this.logger.isErrorEnabled();
+            case WARN:
+                return marker != null ? this.logger.isWarnEnabled(marker) : this.logger.isWarnEnabled();
+            case INFO:
+                return marker != null ? this.logger.isInfoEnabled(marker) : this.logger.isInfoEnabled();
+            case DEBUG:
+                return marker != null ? this.logger.isDebugEnabled(marker) : this.logger.isDebugEnabled();
+            case TRACE:
+                return marker != null ? this.logger.isTraceEnabled(marker) : this.logger.isTraceEnabled();
+            default:
+                return false;
+        }
+    }
+
+    private boolean isEnabledCustom(CustomLevel level, Marker marker) {
+        return this.customLevelHandler != null && this.customLevelHandler.isEnabled(this.logger, level, marker);
+    }
+
     // ----- log ----- beginning
     @Override
     public void log(CustomLevel level, Marker marker, Throwable thrown, String message, Object... arguments) {
-        doDeliver(
-                AsyncDelivery.create(this.logger, this.customLevelHandler, level)
-                        .marker(resolveMarker(marker))
-                        .thrown(thrown)
-                        .message(message).arguments(arguments)
-        );
+        marker = resolveMarker(marker);
+        if (isEnabledCustom(level, marker)) {
+            doDeliver(level, marker, thrown, message, arguments);
+        }
     }
 
     @Override
     public void log(CustomLevel level, Marker marker, String message, Object... arguments) {
-        doDeliver(
-                AsyncDelivery.create(this.logger, this.customLevelHandler, level)
-                        .marker(resolveMarker(marker))
-                        .message(message).arguments(arguments)
-        );
+        marker = resolveMarker(marker);
+        if (isEnabledCustom(level, marker)) {
+            doDeliver(level, marker, null, message, arguments);
+        }
     }
 
     @Override
     public void log(CustomLevel level, Throwable thrown, String message, Object... arguments) {
-        doDeliver(
-                AsyncDelivery.create(this.logger, this.customLevelHandler, level)
-                        .marker(this.defaultMarker)
-                        .thrown(thrown)
-                        .message(message).arguments(arguments)
-        );
+        if (isEnabledCustom(level, this.defaultMarker)) {
+            doDeliver(level, this.defaultMarker, thrown, message, arguments);
+        }
     }
 
     @Override
     public void log(CustomLevel level, String message, Object... arguments) {
-        doDeliver(
-                AsyncDelivery.create(this.logger, this.customLevelHandler, level)
-                        .marker(this.defaultMarker)
-                        .message(message).arguments(arguments)
-        );
+        if (isEnabledCustom(level, this.defaultMarker)) {
+            doDeliver(level, this.defaultMarker, null, message, arguments);
+        }
     }
     // ----- log ----- ending
 
@@ -109,37 +171,29 @@ public class AsyncLogger extends CaramelLogger {
 
     // ----- error ----- beginning
     public void error(Marker marker, Throwable thrown, String pattern, Object... arguments) {
-        doDeliver(
-                AsyncDelivery.error(this.logger)
-                        .marker(resolveMarker(marker))
-                        .thrown(thrown)
-                        .message(pattern).arguments(arguments)
-        );
+        marker = resolveMarker(marker);
+        if (isEnabled(Level.ERROR, marker)) {
+            doDeliver(Level.ERROR, marker, thrown, pattern, arguments);
+        }
     }
 
     public void error(Marker marker, String pattern, Object... arguments) {
-        doDeliver(
-                AsyncDelivery.error(this.logger)
-                        .marker(resolveMarker(marker))
-                        .message(pattern).arguments(arguments)
-        );
+        marker = resolveMarker(marker);
+        if (isEnabled(Level.ERROR, marker)) {
+            doDeliver(Level.ERROR, marker, null, pattern, arguments);
+        }
     }
 
     public void error(Throwable thrown, String pattern, Object... arguments) {
-        doDeliver(
-                AsyncDelivery.error(this.logger)
-                        .marker(this.defaultMarker)
-                        .thrown(thrown)
-                        .message(pattern).arguments(arguments)
-        );
+        if (isEnabled(Level.ERROR, this.defaultMarker)) {
+            doDeliver(Level.ERROR, this.defaultMarker, thrown, pattern, arguments);
+        }
     }
 
     public void error(String pattern, Object... arguments) {
-        doDeliver(
-                AsyncDelivery.error(this.logger)
-                        .marker(this.defaultMarker)
-                        .message(pattern).arguments(arguments)
-        );
+        if (isEnabled(Level.ERROR, this.defaultMarker)) {
+            doDeliver(Level.ERROR, this.defaultMarker, null, pattern, arguments);
+        }
     }
     // ----- error ----- ending
 
@@ -148,37 +202,29 @@ public class AsyncLogger extends CaramelLogger {
 
     // ----- warn ----- beginning
     public void warn(Marker marker, Throwable thrown, String pattern, Object... arguments) {
-        doDeliver(
-                AsyncDelivery.warn(this.logger)
-                        .marker(resolveMarker(marker))
-                        .thrown(thrown)
-                        .message(pattern).arguments(arguments)
-        );
+        marker = resolveMarker(marker);
+        if (isEnabled(Level.WARN, marker)) {
+            doDeliver(Level.WARN, marker, thrown, pattern, arguments);
+        }
     }
 
     public void warn(Marker marker, String pattern, Object... arguments) {
-        doDeliver(
-                AsyncDelivery.warn(this.logger)
-                        .marker(resolveMarker(marker))
-                        .message(pattern).arguments(arguments)
-        );
+        marker = resolveMarker(marker);
+        if (isEnabled(Level.WARN, marker)) {
+            doDeliver(Level.WARN, marker, null, pattern, arguments);
+        }
     }
 
     public void warn(Throwable thrown, String pattern, Object... arguments) {
-        doDeliver(
-                AsyncDelivery.warn(this.logger)
-                        .marker(this.defaultMarker)
-                        .thrown(thrown)
-                        .message(pattern).arguments(arguments)
-        );
+        if (isEnabled(Level.WARN, this.defaultMarker)) {
+            doDeliver(Level.WARN, this.defaultMarker, thrown, pattern, arguments);
+        }
     }
 
     public void warn(String pattern, Object... arguments) {
-        doDeliver(
-                AsyncDelivery.warn(this.logger)
-                        .marker(this.defaultMarker)
-                        .message(pattern).arguments(arguments)
-        );
+        if (isEnabled(Level.WARN, this.defaultMarker)) {
+            doDeliver(Level.WARN, this.defaultMarker, null, pattern, arguments);
+        }
     }
     // ----- warn ----- ending
 
@@ -187,37 +233,29 @@ public class AsyncLogger extends CaramelLogger {
 
     // ----- info ----- beginning
     public void info(Marker marker, Throwable thrown, String pattern, Object... arguments) {
-        doDeliver(
-                AsyncDelivery.info(this.logger)
-                        .marker(resolveMarker(marker))
-                        .thrown(thrown)
-                        .message(pattern).arguments(arguments)
-        );
+        marker = resolveMarker(marker);
+        if (isEnabled(Level.INFO, marker)) {
+            doDeliver(Level.INFO, marker, thrown, pattern, arguments);
+        }
     }
 
     public void info(Marker marker, String pattern, Object... arguments) {
-        doDeliver(
-                AsyncDelivery.info(this.logger)
-                        .marker(resolveMarker(marker))
-                        .message(pattern).arguments(arguments)
-        );
+        marker = resolveMarker(marker);
+        if (isEnabled(Level.INFO, marker)) {
+            doDeliver(Level.INFO, marker, null, pattern, arguments);
+        }
     }
 
     public void info(Throwable thrown, String pattern, Object... arguments) {
-        doDeliver(
-                AsyncDelivery.info(this.logger)
-                        .marker(this.defaultMarker)
-                        .thrown(thrown)
-                        .message(pattern).arguments(arguments)
-        );
+        if (isEnabled(Level.INFO, this.defaultMarker)) {
+            doDeliver(Level.INFO, this.defaultMarker, thrown, pattern, arguments);
+        }
     }
 
     public void info(String pattern, Object... arguments) {
-        doDeliver(
-                AsyncDelivery.info(this.logger)
-                        .marker(this.defaultMarker)
-                        .message(pattern).arguments(arguments)
-        );
+        if (isEnabled(Level.INFO, this.defaultMarker)) {
+            doDeliver(Level.INFO, this.defaultMarker, null, pattern, arguments);
+        }
     }
     // ----- info ----- ending
 
@@ -226,37 +264,29 @@ public class AsyncLogger extends CaramelLogger {
 
     // ----- debug ----- beginning
     public void debug(Marker marker, Throwable thrown, String pattern, Object... arguments) {
-        doDeliver(
-                AsyncDelivery.debug(this.logger)
-                        .marker(resolveMarker(marker))
-                        .thrown(thrown)
-                        .message(pattern).arguments(arguments)
-        );
+        marker = resolveMarker(marker);
+        if (isEnabled(Level.DEBUG, marker)) {
+            doDeliver(Level.DEBUG, marker, thrown, pattern, arguments);
+        }
     }
 
     public void debug(Marker marker, String pattern, Object... arguments) {
-        doDeliver(
-                AsyncDelivery.debug(this.logger)
-                        .marker(resolveMarker(marker))
-                        .message(pattern).arguments(arguments)
-        );
+        marker = resolveMarker(marker);
+        if (isEnabled(Level.DEBUG, marker)) {
+            doDeliver(Level.DEBUG, marker, null, pattern, arguments);
+        }
     }
 
     public void debug(Throwable thrown, String pattern, Object... arguments) {
-        doDeliver(
-                AsyncDelivery.debug(this.logger)
-                        .marker(this.defaultMarker)
-                        .thrown(thrown)
-                        .message(pattern).arguments(arguments)
-        );
+        if (isEnabled(Level.DEBUG, this.defaultMarker)) {
+            doDeliver(Level.DEBUG, this.defaultMarker, thrown, pattern, arguments);
+        }
     }
 
     public void debug(String pattern, Object... arguments) {
-        doDeliver(
-                AsyncDelivery.debug(this.logger)
-                        .marker(this.defaultMarker)
-                        .message(pattern).arguments(arguments)
-        );
+        if (isEnabled(Level.DEBUG, this.defaultMarker)) {
+            doDeliver(Level.DEBUG, this.defaultMarker, null, pattern, arguments);
+        }
     }
     // ----- debug ----- ending
 
@@ -265,37 +295,29 @@ public class AsyncLogger extends CaramelLogger {
 
     // ----- trace ----- beginning
     public void trace(Marker marker, Throwable thrown, String pattern, Object... arguments) {
-        doDeliver(
-                AsyncDelivery.trace(this.logger)
-                        .marker(resolveMarker(marker))
-                        .thrown(thrown)
-                        .message(pattern).arguments(arguments)
-        );
+        marker = resolveMarker(marker);
+        if (isEnabled(Level.TRACE, marker)) {
+            doDeliver(Level.TRACE, marker, thrown, pattern, arguments);
+        }
     }
 
     public void trace(Marker marker, String pattern, Object... arguments) {
-        doDeliver(
-                AsyncDelivery.trace(this.logger)
-                        .marker(resolveMarker(marker))
-                        .message(pattern).arguments(arguments)
-        );
+        marker = resolveMarker(marker);
+        if (isEnabled(Level.TRACE, marker)) {
+            doDeliver(Level.TRACE, marker, null, pattern, arguments);
+        }
     }
 
     public void trace(Throwable thrown, String pattern, Object... arguments) {
-        doDeliver(
-                AsyncDelivery.trace(this.logger)
-                        .marker(this.defaultMarker)
-                        .thrown(thrown)
-                        .message(pattern).arguments(arguments)
-        );
+        if (isEnabled(Level.TRACE, this.defaultMarker)) {
+            doDeliver(Level.TRACE, this.defaultMarker, thrown, pattern, arguments);
+        }
     }
 
     public void trace(String pattern, Object... arguments) {
-        doDeliver(
-                AsyncDelivery.trace(this.logger)
-                        .marker(this.defaultMarker)
-                        .message(pattern).arguments(arguments)
-        );
+        if (isEnabled(Level.TRACE, this.defaultMarker)) {
+            doDeliver(Level.TRACE, this.defaultMarker, null, pattern, arguments);
+        }
     }
     // ----- trace ----- ending
 
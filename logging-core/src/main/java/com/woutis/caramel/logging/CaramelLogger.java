@@ -125,6 +125,29 @@ public abstract class CaramelLogger {
         return ASYNC.computeIfAbsent(cacheKey(clazz, defaultMarker), key -> new AsyncLogger(clazz, defaultMarker));
     }
 
+    /**
+     * 返回与当前 SLF4J 绑定匹配的 {@link CustomLevelHandler}，首次调用时解析并缓存
+     *
+     * @return handler，没有匹配的实现时返回 {@code null}
+     */
+    public static CustomLevelHandler levelHandler() {
+        return LevelHandlerHolder.HANDLER;
+    }
+
+    private static final class LevelHandlerHolder {
+        private static final CustomLevelHandler HANDLER = lookupLevelHandler();
+
+        private static CustomLevelHandler lookupLevelHandler() {
+            ServiceLoader<CustomLevelHandler> handlers = ServiceLoader.load(CustomLevelHandler.class);
+            for (CustomLevelHandler handler : handlers) {
+                if (handler.factoryClass() == LoggerFactory.getILoggerFactory().getClass()) {
+                    return handler;
+                }
+            }
+            return null;
+        }
+    }
+
     private static String cacheKey(Object main, Marker marker) {
         String key = "";
         if (main == null) {
@@ -168,13 +191,7 @@ public abstract class CaramelLogger {
     }
 
     protected void resolveLevelHandler() {
-        ServiceLoader<CustomLevelHandler> handlers = ServiceLoader.load(CustomLevelHandler.class);
-        for (CustomLevelHandler handler : handlers) {
-            if (handler.factoryClass() == LoggerFactory.getILoggerFactory().getClass()) {
-                this.customLevelHandler = handler;
-                break;
-            }
-        }
+        this.customLevelHandler = levelHandler();
     }
 
     public String getName() {
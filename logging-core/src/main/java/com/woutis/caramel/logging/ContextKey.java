@@ -0,0 +1,103 @@
+/*
+ * Copyright 2018-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.woutis.caramel.logging;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Pre-registered {@link LoggingContext} key with a fixed slot index.
+ *
+ * <p>Obtained through {@link LoggingContext#key(String)}, usually once at startup for well-known keys such as
+ * {@code traceId}. Values of registered keys are stored in a per-thread array indexed by {@link #index()}, so reads and
+ * writes through a {@code ContextKey} are array accesses; string keys with the same name resolve to the same slot.
+ * Registrations are never removed, so dynamic or unbounded key names should stay plain strings.
+ *
+ * @author Kweny
+ * @since 0.0.1
+ */
+public final class ContextKey {
+
+    private static final ConcurrentMap<String, ContextKey> registry = new ConcurrentHashMap<>();
+    private static volatile ContextKey[] keys = new ContextKey[0];
+
+    /**
+     * 注册键名，已注册时返回已有的键
+     */
+    static ContextKey register(String name) {
+        if (name == null) {
+            throw new IllegalArgumentException("key cannot be null");
+        }
+        ContextKey key = registry.get(name);
+        if (key != null) {
+            return key;
+        }
+        synchronized (ContextKey.class) {
+            key = registry.get(name);
+            if (key == null) {
+                ContextKey[] current = keys;
+                key = new ContextKey(name, current.length);
+                ContextKey[] grown = Arrays.copyOf(current, current.length + 1);
+                grown[key.index] = key;
+                // 先发布索引表，查到的键总能按索引取回
+                keys = grown;
+                registry.put(name, key);
+            }
+            return key;
+        }
+    }
+
+    /**
+     * @return 已注册的键，未注册时返回 {@code null}
+     */
+    static ContextKey find(String name) {
+        return name != null ? registry.get(name) : null;
+    }
+
+    /** 已注册的键数量，即槽位数组所需的长度 */
+    static int count() {
+        return keys.length;
+    }
+
+    static ContextKey byIndex(int index) {
+        return keys[index];
+    }
+
+    private final String name;
+    private final int index;
+
+    private ContextKey(String name, int index) {
+        this.name = name;
+        this.index = index;
+    }
+
+    public String name() {
+        return this.name;
+    }
+
+    /** 槽位索引，按注册顺序从 0 开始 */
+    public int index() {
+        return this.index;
+    }
+
+    @Override
+    public String toString() {
+        return this.name;
+    }
+
+}
@@ -0,0 +1,511 @@
+/*
+ * Copyright 2018-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.woutis.caramel.logging;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+/**
+ * Immutable, structurally shared map backing {@link LoggingContext}.
+ *
+ * <p>A hash array mapped trie: {@link #with(String, Object)} and {@link #without(String)} return a new map that only
+ * copies the nodes on the path of the changed key and shares everything else, so a snapshot of the context is just a
+ * reference to the current map. Keys must not be {@code null}; values may be.
+ *
+ * <p>Values of keys registered as {@link ContextKey} are kept apart in an array indexed by {@link ContextKey#index()},
+ * where {@code null} means absent, so setting such a key to {@code null} removes it. {@link LoggingContext} updates
+ * that array in place while it owns the map exclusively and copies it once after handing out a snapshot.
+ *
+ * @author Kweny
+ * @since 0.0.1
+ */
+public final class ContextMap extends AbstractMap<String, Object> {
+
+    private static final ContextMap EMPTY = new ContextMap(Node.EMPTY, 0, null, 0);
+
+    /** {@link Node#get} 未找到键时的返回值，用于区分值为 {@code null} 的键 */
+    private static final Object NOT_FOUND = new Object();
+
+    public static ContextMap empty() {
+        return EMPTY;
+    }
+
+    /**
+     * 将任意 map 转为 {@link ContextMap}，本身即为 {@link ContextMap} 时直接返回
+     */
+    public static ContextMap of(Map<String, ?> data) {
+        return EMPTY.withAll(data);
+    }
+
+    private Node root;
+    /** 字典树中的键数量 */
+    private int size;
+    /** 已注册键的值，按 {@link ContextKey#index()} 存放，{@code null} 表示未设置 */
+    private Object[] slots;
+    private int slotCount;
+    private Set<Entry<String, Object>> entrySet;
+
+    private ContextMap(Node root, int size, Object[] slots, int slotCount) {
+        this.root = root;
+        this.size = size;
+        this.slots = slots;
+        this.slotCount = slotCount;
+    }
+
+    /**
+     * @return 包含该键值的新 map，值未变化时返回当前 map
+     * @throws IllegalArgumentException {@code key} 为 {@code null}
+     */
+    public ContextMap with(String key, Object value) {
+        if (key == null) {
+            throw new IllegalArgumentException("key cannot be null");
+        }
+        ContextKey registered = ContextKey.find(key);
+        if (registered != null) {
+            return with(registered, value);
+        }
+        int hash = hash(key);
+        Object current = this.root.get(key, hash, 0);
+        if (current == value) {
+            return this;
+        }
+        return new ContextMap(this.root.put(key, value, hash, 0), current == NOT_FOUND ? this.size + 1 : this.size, this.slots, this.slotCount);
+    }
+
+    /**
+     * @return 包含该键值的新 map，{@code value} 为 {@code null} 时等同于 {@link #without(ContextKey)}
+     */
+    public ContextMap with(ContextKey key, Object value) {
+        if (value != null && slot(key) == value) {
+            return this;
+        }
+        if (value == null && !containsKey(key)) {
+            return this;
+        }
+        ContextMap copy = owned();
+        copy.put(key, value);
+        return copy;
+    }
+
+    /**
+     * @return 合并 {@code data} 后的新 map；当前 map 为空且 {@code data} 即为 {@link ContextMap} 时直接返回 {@code data}
+     */
+    public ContextMap withAll(Map<String, ?> data) {
+        if (data == null || data.isEmpty()) {
+            return this;
+        }
+        if (isEmpty() && data instanceof ContextMap) {
+            return (ContextMap) data;
+        }
+        ContextMap result = this;
+        for (Map.Entry<String, ?> entry : data.entrySet()) {
+            result = result.with(entry.getKey(), entry.getValue());
+        }
+        return result;
+    }
+
+    /**
+     * @return 不包含该键的新 map，键不存在时返回当前 map
+     */
+    public ContextMap without(String key) {
+        if (key == null) {
+            return this;
+        }
+        ContextKey registered = ContextKey.find(key);
+        if (registered != null) {
+            return without(registered);
+        }
+        int hash = hash(key);
+        if (this.root.get(key, hash, 0) == NOT_FOUND) {
+            return this;
+        }
+        if (this.size == 1 && this.slotCount == 0) {
+            return EMPTY;
+        }
+        return new ContextMap(this.size == 1 ? Node.EMPTY : this.root.remove(key, hash, 0), this.size - 1, this.slots, this.slotCount);
+    }
+
+    /**
+     * @return 不包含该键的新 map，键不存在时返回当前 map
+     */
+    public ContextMap without(ContextKey key) {
+        return with(key, null);
+    }
+
+    /**
+     * 复制出一个可原地修改槽位的副本，只复制槽位数组，字典树仍然共享
+     */
+    ContextMap owned() {
+        Object[] slots = this.slots != null
+                ? Arrays.copyOf(this.slots, Math.max(this.slots.length, ContextKey.count()))
+                : new Object[ContextKey.count()];
+        return new ContextMap(this.root, this.size, slots, this.slotCount);
+    }
+
+    /**
+     * 原地设置已注册键的值，只能用于 {@link #owned()} 得到且尚未交给其它代码的副本；
+     * 同名的键在注册前已写入字典树时一并移除
+     */
+    void put(ContextKey key, Object value) {
+        int index = key.index();
+        if (this.slots == null || index >= this.slots.length) {
+            this.slots = Arrays.copyOf(this.slots != null ? this.slots : new Object[0], Math.max(ContextKey.count(), index + 1));
+        }
+        Object previous = this.slots[index];
+        this.slots[index] = value;
+        this.slotCount += (value != null ? 1 : 0) - (previous != null ? 1 : 0);
+        if (this.size > 0) {
+            int hash = hash(key.name());
+            if (this.root.get(key.name(), hash, 0) != NOT_FOUND) {
+                this.root = this.size == 1 ? Node.EMPTY : this.root.remove(key.name(), hash, 0);
+                this.size--;
+            }
+        }
+    }
+
+    @Override
+    public int size() {
+        return this.size + this.slotCount;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return this.size == 0 && this.slotCount == 0;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        if (!(key instanceof String)) {
+            return false;
+        }
+        if (this.slotCount > 0) {
+            ContextKey registered = ContextKey.find((String) key);
+            if (registered != null && slot(registered) != null) {
+                return true;
+            }
+        }
+        return this.size > 0 && this.root.get((String) key, hash((String) key), 0) != NOT_FOUND;
+    }
+
+    public boolean containsKey(ContextKey key) {
+        return slot(key) != null || this.size > 0 && this.root.get(key.name(), hash(key.name()), 0) != NOT_FOUND;
+    }
+
+    @Override
+    public Object get(Object key) {
+        if (!(key instanceof String)) {
+            return null;
+        }
+        if (this.slotCount > 0) {
+            ContextKey registered = ContextKey.find((String) key);
+            if (registered != null && slot(registered) != null) {
+                return slot(registered);
+            }
+        }
+        return this.size > 0 ? dynamic((String) key) : null;
+    }
+
+    /** 按槽位读取，未设置时再查找注册前写入字典树的同名键 */
+    public Object get(ContextKey key) {
+        Object value = slot(key);
+        return value != null || this.size == 0 ? value : dynamic(key.name());
+    }
+
+    private Object slot(ContextKey key) {
+        Object[] slots = this.slots;
+        return slots != null && key.index() < slots.length ? slots[key.index()] : null;
+    }
+
+    private Object dynamic(String key) {
+        Object value = this.root.get(key, hash(key), 0);
+        return value != NOT_FOUND ? value : null;
+    }
+
+    /** 不创建 {@link Entry} 的遍历 */
+    @Override
+    public void forEach(BiConsumer<? super String, ? super Object> action) {
+        if (this.slotCount > 0) {
+            for (int i = 0; i < this.slots.length; i++) {
+                if (this.slots[i] != null) {
+                    action.accept(ContextKey.byIndex(i).name(), this.slots[i]);
+                }
+            }
+        }
+        this.root.forEach(action);
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        Set<Entry<String, Object>> entries = this.entrySet;
+        if (entries == null) {
+            entries = new AbstractSet<Entry<String, Object>>() {
+                @Override
+                public Iterator<Entry<String, Object>> iterator() {
+                    return new EntryIterator(ContextMap.this.slotCount > 0 ? ContextMap.this.slots : null, ContextMap.this.root);
+                }
+
+                @Override
+                public int size() {
+                    return ContextMap.this.size();
+                }
+            };
+            this.entrySet = entries;
+        }
+        return entries;
+    }
+
+    private static int hash(String key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * 字典树节点。普通节点按 {@code bitmap} 中置位的顺序在 {@code array} 中成对存放键与值，键为 {@code null} 时值为子节点；
+     * 哈希值完全相同的键存放在冲突节点中，按顺序线性查找
+     */
+    private static final class Node {
+
+        static final Node EMPTY = new Node(0, new Object[0], false);
+
+        final int bitmap;
+        final Object[] array;
+        final boolean collision;
+
+        Node(int bitmap, Object[] array, boolean collision) {
+            this.bitmap = bitmap;
+            this.array = array;
+            this.collision = collision;
+        }
+
+        Object get(String key, int hash, int shift) {
+            if (this.collision) {
+                for (int i = 0; i < this.array.length; i += 2) {
+                    if (key.equals(this.array[i])) {
+                        return this.array[i + 1];
+                    }
+                }
+                return NOT_FOUND;
+            }
+            int bit = 1 << ((hash >>> shift) & 31);
+            if ((this.bitmap & bit) == 0) {
+                return NOT_FOUND;
+            }
+            int index = index(bit);
+            Object existing = this.array[index];
+            if (existing == null) {
+                return ((Node) this.array[index + 1]).get(key, hash, shift + 5);
+            }
+            return key.equals(existing) ? this.array[index + 1] : NOT_FOUND;
+        }
+
+        Node put(String key, Object value, int hash, int shift) {
+            if (this.collision) {
+                for (int i = 0; i < this.array.length; i += 2) {
+                    if (key.equals(this.array[i])) {
+                        return new Node(0, replace(i + 1, value), true);
+                    }
+                }
+                Object[] array = new Object[this.array.length + 2];
+                System.arraycopy(this.array, 0, array, 0, this.array.length);
+                array[this.array.length] = key;
+                array[this.array.length + 1] = value;
+                return new Node(0, array, true);
+            }
+            int bit = 1 << ((hash >>> shift) & 31);
+            int index = index(bit);
+            if ((this.bitmap & bit) == 0) {
+                Object[] array = new Object[this.array.length + 2];
+                System.arraycopy(this.array, 0, array, 0, index);
+                array[index] = key;
+                array[index + 1] = value;
+                System.arraycopy(this.array, index, array, index + 2, this.array.length - index);
+                return new Node(this.bitmap | bit, array, false);
+            }
+            Object existing = this.array[index];
+            if (existing == null) {
+                Node child = ((Node) this.array[index + 1]).put(key, value, hash, shift + 5);
+                return new Node(this.bitmap, replace(index + 1, child), false);
+            }
+            if (key.equals(existing)) {
+                return new Node(this.bitmap, replace(index + 1, value), false);
+            }
+            String existingKey = (String) existing;
+            Node child = create(existingKey, this.array[index + 1], ContextMap.hash(existingKey), key, value, hash, shift + 5);
+            Object[] array = this.array.clone();
+            array[index] = null;
+            array[index + 1] = child;
+            return new Node(this.bitmap, array, false);
+        }
+
+        /**
+         * 移除一个已确认存在的键
+         *
+         * @return 移除后的节点，节点变空时返回 {@code null}
+         */
+        Node remove(String key, int hash, int shift) {
+            if (this.collision) {
+                if (this.array.length == 2) {
+                    return null;
+                }
+                for (int i = 0; i < this.array.length; i += 2) {
+                    if (key.equals(this.array[i])) {
+                        return new Node(0, erase(i), true);
+                    }
+                }
+                return this;
+            }
+            int bit = 1 << ((hash >>> shift) & 31);
+            int index = index(bit);
+            if (this.array[index] == null) {
+                Node child = ((Node) this.array[index + 1]).remove(key, hash, shift + 5);
+                if (child != null) {
+                    if (child.array.length == 2 && child.array[0] != null) {
+                        // 子节点只剩一个键值时上提到当前节点
+                        Object[] array = this.array.clone();
+                        array[index] = child.array[0];
+                        array[index + 1] = child.array[1];
+                        return new Node(this.bitmap, array, false);
+                    }
+                    return new Node(this.bitmap, replace(index + 1, child), false);
+                }
+            }
+            if (this.bitmap == bit) {
+                return null;
+            }
+            return new Node(this.bitmap & ~bit, erase(index), false);
+        }
+
+        void forEach(BiConsumer<? super String, ? super Object> action) {
+            for (int i = 0; i < this.array.length; i += 2) {
+                Object key = this.array[i];
+                if (key == null) {
+                    ((Node) this.array[i + 1]).forEach(action);
+                } else {
+                    action.accept((String) key, this.array[i + 1]);
+                }
+            }
+        }
+
+        private int index(int bit) {
+            return 2 * Integer.bitCount(this.bitmap & (bit - 1));
+        }
+
+        private Object[] replace(int index, Object value) {
+            Object[] array = this.array.clone();
+            array[index] = value;
+            return array;
+        }
+
+        private Object[] erase(int index) {
+            Object[] array = new Object[this.array.length - 2];
+            System.arraycopy(this.array, 0, array, 0, index);
+            System.arraycopy(this.array, index + 2, array, index, this.array.length - index - 2);
+            return array;
+        }
+
+        private static Node create(String key1, Object value1, int hash1, String key2, Object value2, int hash2, int shift) {
+            if (shift >= 32) {
+                return new Node(0, new Object[] {key1, value1, key2, value2}, true);
+            }
+            int bit1 = (hash1 >>> shift) & 31;
+            int bit2 = (hash2 >>> shift) & 31;
+            if (bit1 == bit2) {
+                return new Node(1 << bit1, new Object[] {null, create(key1, value1, hash1, key2, value2, hash2, shift + 5)}, false);
+            }
+            Object[] array = bit1 < bit2
+                    ? new Object[] {key1, value1, key2, value2}
+                    : new Object[] {key2, value2, key1, value1};
+            return new Node((1 << bit1) | (1 << bit2), array, false);
+        }
+
+    }
+
+    /** 先遍历槽位，再深度优先遍历字典树，最多 7 层普通节点加 1 层冲突节点 */
+    private static final class EntryIterator implements Iterator<Entry<String, Object>> {
+
+        private final Object[] slots;
+        private int slot;
+        private final Node[] nodes = new Node[8];
+        private final int[] positions = new int[8];
+        private int depth;
+        private String nextKey;
+        private Object nextValue;
+        private boolean ready;
+
+        EntryIterator(Object[] slots, Node root) {
+            this.slots = slots;
+            this.nodes[0] = root;
+            advance();
+        }
+
+        private void advance() {
+            while (this.slots != null && this.slot < this.slots.length) {
+                int index = this.slot++;
+                if (this.slots[index] != null) {
+                    this.nextKey = ContextKey.byIndex(index).name();
+                    this.nextValue = this.slots[index];
+                    this.ready = true;
+                    return;
+                }
+            }
+            while (this.depth >= 0) {
+                Node node = this.nodes[this.depth];
+                int position = this.positions[this.depth];
+                if (position >= node.array.length) {
+                    this.depth--;
+                    continue;
+                }
+                this.positions[this.depth] = position + 2;
+                Object key = node.array[position];
+                if (key == null) {
+                    this.depth++;
+                    this.nodes[this.depth] = (Node) node.array[position + 1];
+                    this.positions[this.depth] = 0;
+                    continue;
+                }
+                this.nextKey = (String) key;
+                this.nextValue = node.array[position + 1];
+                this.ready = true;
+                return;
+            }
+            this.ready = false;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return this.ready;
+        }
+
+        @Override
+        public Entry<String, Object> next() {
+            if (!this.ready) {
+                throw new NoSuchElementException();
+            }
+            Entry<String, Object> entry = new SimpleImmutableEntry<>(this.nextKey, this.nextValue);
+            advance();
+            return entry;
+        }
+
+    }
+
+}
@@ -17,11 +17,27 @@
 package com.woutis.caramel.logging;
 
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.function.BiConsumer;
 
 /**
  * logging context
  *
+ * <p>Entries are kept in an immutable {@link ContextMap}; every change replaces the map of the current thread, so
+ * {@link #replica()} and {@link #all()} hand out the current map itself instead of a copy.
+ *
+ * <p>Well-known keys can be registered once with {@link #key(String)}; their values live in a per-thread slot array
+ * that is written in place until a snapshot is handed out, so {@link #set(ContextKey, Object)} and
+ * {@link #get(ContextKey)} are plain array accesses. String keys keep working and resolve registered names to the
+ * same slots.
+ *
+ * <p>{@link #scope(String, Object)} and its overloads open a {@link Scope} that puts the current map aside and
+ * restores it on close, so per-request or per-item entries cannot leak into later work on pooled threads:
+ * <pre>
+ *     try (LoggingContext.Scope ignored = LoggingContext.scope(TRACE_ID, traceId).and("tenant", tenant)) {
+ *         ...
+ *     }
+ * </pre>
+ *
  * @author Kweny
  * @since 0.0.1
  */
@@ -36,11 +52,61 @@ public class LoggingContext {
 
     public static void release() {
         clear();
+        _sourceLocation(null);
         _sourceStackTrace(null);
         _sourceThread(null);
         local.remove();
     }
 
+    /**
+     * 注册常用的上下文键，已注册时返回已有的键；建议在启动时注册并保存在常量中
+     */
+    public static ContextKey key(String name) {
+        return ContextKey.register(name);
+    }
+
+    /**
+     * 打开一个作用域，关闭时恢复到打开前的上下文，期间的所有修改（包括直接调用 {@link #set} / {@link #remove}）都会撤销
+     */
+    public static Scope scope() {
+        return payload().openScope();
+    }
+
+    /** 打开作用域并写入一个键值，关闭时恢复 */
+    public static Scope scope(String key, Object value) {
+        LoggingContext context = payload();
+        Scope scope = context.openScope();
+        context.setEntry(key, value);
+        return scope;
+    }
+
+    /** 打开作用域并以槽位写入一个已注册的键，关闭时恢复 */
+    public static Scope scope(ContextKey key, Object value) {
+        LoggingContext context = payload();
+        Scope scope = context.openScope();
+        context.setEntry(key, value);
+        return scope;
+    }
+
+    /** 打开作用域并写入 {@code data} 中的全部键值，关闭时恢复 */
+    public static Scope scope(Map<String, ?> data) {
+        LoggingContext context = payload();
+        Scope scope = context.openScope();
+        context.setEntries(data);
+        return scope;
+    }
+
+    /**
+     * 以 {@code snapshot}（例如另一线程上 {@link #replica()} 的结果）替换当前线程的上下文，关闭返回的作用域时恢复，
+     * 用于把上下文带到执行任务的线程上，参见 {@code com.woutis.caramel.logging.propagation.ContextPropagation}
+     */
+    public static Scope attach(Map<String, ?> snapshot) {
+        LoggingContext context = payload();
+        Scope scope = context.openScope();
+        context.payload = ContextMap.of(snapshot);
+        return scope;
+    }
+
     public static boolean emptily() {
         return payload().isEmpty();
     }
@@ -49,6 +115,11 @@ public class LoggingContext {
         payload().setEntry(key, value);
     }
 
+    /** 以槽位写入已注册的键，{@code value} 为 {@code null} 时移除该键 */
+    public static void set(ContextKey key, Object value) {
+        payload().setEntry(key, value);
+    }
+
     public static void set(Map<String, ?> data) {
         payload().setEntries(data);
     }
@@ -57,6 +128,10 @@ public class LoggingContext {
         return payload().getEntry(key);
     }
 
+    public static Object get(ContextKey key) {
+        return payload().payload.get(key);
+    }
+
     public static List<?> get(Collection<String> keys) {
         return payload().getEntries(keys);
     }
@@ -65,10 +140,19 @@ public class LoggingContext {
         return payload().allEntries();
     }
 
+    /** 遍历当前上下文而不交出快照，供日志框架把上下文注入自己的事件，之后的写入无需先复制 */
+    public static void forEach(BiConsumer<? super String, ? super Object> action) {
+        payload().payload.forEach(action);
+    }
+
     public static Object remove(String key) {
         return payload().removeEntry(key);
     }
 
+    public static Object remove(ContextKey key) {
+        return payload().removeEntry(key);
+    }
+
     public static List<?> remove(Collection<String> keys) {
         return payload().removeEntries(keys);
     }
@@ -77,11 +161,44 @@ public class LoggingContext {
         payload().clearAll();
     }
 
-    /** 异步日志时复制上下文数据到日志子线程，避免外部清理上下文时导致日志输出丢失 */
+    /** 异步日志时将上下文数据交给日志子线程；上下文不可变，直接返回当前快照，外部之后的修改不影响已提交的日志 */
     public static Map<String, ?> replica() {
         return payload().replicaPayload();
     }
 
+    /**
+     * 仅用于异步日志内部在消费线程上绑定一条日志的上下文快照及日志源信息，禁止外部调用。
+     * 只替换引用，不复制上下文，也不移除线程变量，输出完毕后由 {@link #_unbind()} 解除
+     */
+    public static void _bind(Map<String, ?> data, StackTraceElement sourceLocation, StackTraceElement[] sourceStackTrace, ThreadSnapshot sourceThread) {
+        LoggingContext context = payload();
+        context.payload = ContextMap.of(data);
+        context.owned = false;
+        context.sourceLocation = sourceLocation;
+        context.sourceStackTrace = sourceStackTrace;
+        context.sourceThread = sourceThread;
+    }
+
+    /** 仅用于异步日志内部解除 {@link #_bind} 绑定的内容，保留当前线程的实例以便下一条日志复用，禁止外部调用 */
+    public static void _unbind() {
+        LoggingContext context = payload();
+        context.payload = ContextMap.empty();
+        context.owned = false;
+        context.sourceLocation = null;
+        context.sourceStackTrace = null;
+        context.sourceThread = null;
+    }
+
+    /** 仅用于异步日志内部传递原始日志源位置，禁止外部调用 */
+    public static void _sourceLocation(StackTraceElement source) {
+        payload().setSourceLocation(source);
+    }
+
+    /** 仅用于异步日志内部传递原始日志源位置，禁止外部调用 */
+    public static StackTraceElement _sourceLocation() {
+        return payload().getSourceLocation();
+    }
+
     /** 仅用于异步日志内部传递原始日志源堆栈，禁止外部调用 */
     public static void _sourceStackTrace(StackTraceElement[] source) {
         payload().setSourceStackTrace(source);
@@ -93,22 +210,27 @@ public class LoggingContext {
     }
 
     /** 仅用于异步日志内部传递源线程信息，禁止外部调用 */
-    public static void _sourceThread(Thread thread) {
+    public static void _sourceThread(ThreadSnapshot thread) {
         payload().setSourceThread(thread);
     }
 
     /** 仅用于异步日志内部传递源线程信息，禁止外部调用 */
-    public static Thread _sourceThread() {
+    public static ThreadSnapshot _sourceThread() {
         return payload().getSourceThread();
     }
     // ----- static ----- ending
 
-    private final Map<String, Object> payload;
+    private ContextMap payload;
+    /** {@link #payload} 是否由当前线程独占，独占时原地修改槽位，交出快照后首次修改前复制一次 */
+    private boolean owned;
+    /** 当前线程最内层尚未关闭的作用域 */
+    private Scope scope;
+    private StackTraceElement sourceLocation;
     private StackTraceElement[] sourceStackTrace;
-    private Thread sourceThread;
+    private ThreadSnapshot sourceThread;
 
     private LoggingContext() {
-        this.payload = new HashMap<>();
+        this.payload = ContextMap.empty();
     }
 
     public boolean isEmpty() {
@@ -116,12 +238,28 @@ public class LoggingContext {
     }
 
     private void setEntry(String key, Object value) {
+        ContextKey registered = ContextKey.find(key);
+        if (registered != null) {
+            setEntry(registered, value);
+        } else {
+            this.payload = this.payload.with(key, value);
+        }
+    }
+
+    private void setEntry(ContextKey key, Object value) {
+        if (!this.owned) {
+            this.payload = this.payload.owned();
+            this.owned = true;
+        }
         this.payload.put(key, value);
     }
 
+    /** 当前上下文为空且 {@code data} 为 {@link ContextMap} 时直接引用，不复制 */
     private void setEntries(Map<String, ?> data) {
-        if (data != null && data.size() > 0) {
-            this.payload.putAll(data);
+        ContextMap merged = this.payload.withAll(data);
+        if (merged != this.payload) {
+            this.payload = merged;
+            this.owned = false;
         }
     }
 
@@ -133,30 +271,75 @@ public class LoggingContext {
         if (keys == null || keys.size() == 0) {
             return new ArrayList<>();
         }
-        return keys.stream().distinct().map(this::getEntry).collect(Collectors.toList());
+        List<Object> values = new ArrayList<>(keys.size());
+        for (String key : distinct(keys)) {
+            values.add(getEntry(key));
+        }
+        return values;
     }
 
+    /** 交出当前快照，之后的修改不影响它 */
     private Map<String, ?> allEntries() {
-        return Collections.unmodifiableMap(this.payload);
+        this.owned = false;
+        return this.payload;
     }
 
     private Object removeEntry(String key) {
-        return this.payload.remove(key);
+        ContextKey registered = ContextKey.find(key);
+        if (registered != null) {
+            return removeEntry(registered);
+        }
+        Object previous = this.payload.get(key);
+        this.payload = this.payload.without(key);
+        return previous;
+    }
+
+    private Object removeEntry(ContextKey key) {
+        Object previous = this.payload.get(key);
+        if (this.payload.containsKey(key)) {
+            setEntry(key, null);
+        }
+        return previous;
     }
 
     private List<?> removeEntries(Collection<String> keys) {
         if (keys == null || keys.size() == 0) {
             return new ArrayList<>();
         }
-        return keys.stream().distinct().map(this::removeEntry).collect(Collectors.toList());
+        List<Object> values = new ArrayList<>(keys.size());
+        for (String key : distinct(keys)) {
+            values.add(removeEntry(key));
+        }
+        return values;
+    }
+
+    private static Collection<String> distinct(Collection<String> keys) {
+        return keys instanceof Set ? keys : new LinkedHashSet<>(keys);
     }
 
     private void clearAll() {
-        this.payload.clear();
+        this.payload = ContextMap.empty();
+        this.owned = false;
     }
 
     private Map<String, ?> replicaPayload() {
-        return new HashMap<>(this.payload);
+        this.owned = false;
+        return this.payload;
+    }
+
+    /** 作用域保存的是当前快照本身，之后的修改先复制再写入，不影响保存的快照 */
+    private Scope openScope() {
+        this.owned = false;
+        this.scope = new Scope(this, this.payload, this.scope);
+        return this.scope;
+    }
+
+    private void setSourceLocation(StackTraceElement sourceLocation) {
+        this.sourceLocation = sourceLocation;
+    }
+
+    private StackTraceElement getSourceLocation() {
+        return this.sourceLocation;
     }
 
     private void setSourceStackTrace(StackTraceElement[] sourceStackTrace) {
@@ -167,11 +350,58 @@ public class LoggingContext {
         return this.sourceStackTrace;
     }
 
-    private void setSourceThread(Thread sourceThread) {
+    private void setSourceThread(ThreadSnapshot sourceThread) {
         this.sourceThread = sourceThread;
     }
 
-    private Thread getSourceThread() {
+    private ThreadSnapshot getSourceThread() {
         return this.sourceThread;
     }
+
+    /**
+     * A frame of the per-thread scope stack, holding the context map to restore on {@link #close()}.
+     *
+     * <p>Scopes must be closed on the thread that opened them; closing on another thread, or after
+     * {@link LoggingContext#release()}, does nothing. Closing an outer scope before its inner scopes closes those too.
+     */
+    public static final class Scope implements AutoCloseable {
+
+        private final LoggingContext context;
+        private final ContextMap previous;
+        private final Scope parent;
+        private boolean closed;
+
+        private Scope(LoggingContext context, ContextMap previous, Scope parent) {
+            this.context = context;
+            this.previous = previous;
+            this.parent = parent;
+        }
+
+        /** 在当前作用域中再写入一个键值 */
+        public Scope and(String key, Object value) {
+            this.context.setEntry(key, value);
+            return this;
+        }
+
+        /** 在当前作用域中以槽位再写入一个已注册的键 */
+        public Scope and(ContextKey key, Object value) {
+            this.context.setEntry(key, value);
+            return this;
+        }
+
+        @Override
+        public void close() {
+            if (this.closed || local.get() != this.context) {
+                return;
+            }
+            for (Scope inner = this.context.scope; inner != null && inner != this; inner = inner.parent) {
+                inner.closed = true;
+            }
+            this.closed = true;
+            this.context.payload = this.previous;
+            this.context.owned = false;
+            this.context.scope = this.parent;
+        }
+
+    }
 }
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2018-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.woutis.caramel.logging;
+
+/**
+ * Immutable snapshot of the thread that produced a log event.
+ *
+ * <p>Async events carry this instead of the live {@link Thread}, so queued events neither keep terminated threads
+ * reachable nor report a name the thread was given afterwards. Each thread caches its snapshot and only takes a new
+ * one when its name or priority changes.
+ *
+ * @author Kweny
+ * @since 0.0.1
+ */
+public final class ThreadSnapshot {
+
+    private static final ThreadLocal<ThreadSnapshot> local = new ThreadLocal<>();
+
+    /**
+     * 返回当前线程的快照，线程名称或优先级变化后才重新创建
+     */
+    public static ThreadSnapshot current() {
+        Thread thread = Thread.currentThread();
+        ThreadSnapshot snapshot = local.get();
+        if (snapshot == null || snapshot.priority != thread.getPriority() || !snapshot.name.equals(thread.getName())) {
+            snapshot = new ThreadSnapshot(thread);
+            local.set(snapshot);
+        }
+        return snapshot;
+    }
+
+    /**
+     * 按已知的字段重建快照，例如从 {@code AsyncSpill} 的溢出文件中恢复
+     */
+    public static ThreadSnapshot of(long id, String name, int priority, String group) {
+        return new ThreadSnapshot(id, name, priority, group);
+    }
+
+    private final long id;
+    private final String name;
+    private final int priority;
+    private final String group;
+
+    private ThreadSnapshot(Thread thread) {
+        ThreadGroup threadGroup = thread.getThreadGroup();
+        this.id = thread.getId();
+        this.name = thread.getName();
+        this.priority = thread.getPriority();
+        this.group = threadGroup != null ? threadGroup.getName() : null;
+    }
+
+    private ThreadSnapshot(long id, String name, int priority, String group) {
+        this.id = id;
+        this.name = name;
+        this.priority = priority;
+        this.group = group;
+    }
+
+    public long id() {
+        return this.id;
+    }
+
+    public String name() {
+        return this.name;
+    }
+
+    public int priority() {
+        return this.priority;
+    }
+
+    /** 线程组名称，线程已终止时为 {@code null} */
+    public String group() {
+        return this.group;
+    }
+
+}
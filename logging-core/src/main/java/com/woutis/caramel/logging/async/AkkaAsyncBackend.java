@@ -0,0 +1,439 @@
+/*
+ * Copyright 2018-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.woutis.caramel.logging.async;
+
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import com.woutis.caramel.logging.CaramelLogger;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link AsyncBackend} consuming events on a single {@link AsyncActor} of an Akka {@link ActorSystem}.
+ *
+ * <p>Events are kept in a bounded queue owned by this backend rather than in the actor mailbox, so that capacity and
+ * {@link OverflowPolicy#DROP_OLDEST} can be enforced. The actor is only sent a drain signal when the queue goes from
+ * idle to non-empty, and drains the queue in chunks so it still yields the dispatcher thread regularly. The same queue
+ * buffers events logged while Akka is still starting, so early callers never wait for the actor system.
+ *
+ * <p>With {@code caramel.logging.async.shards} greater than one, events are split over that many queues, each drained
+ * by its own actor, so formatting and layout work runs on several dispatcher threads in parallel. See
+ * {@link AsyncSharding} for how the shard is chosen and which ordering is kept.
+ *
+ * <p>Each shard also has a priority lane for the events {@link AsyncLanes} classifies as severe, with its own capacity;
+ * the actor drains it before the normal queue, so an error is not stuck behind a backlog of debug events.
+ *
+ * <p>The actors run on the dedicated {@value #DISPATCHER} (see {@code async-system.conf} and
+ * {@link AsyncExecutorConfigurator}), tuned by the {@code caramel.logging.async.dispatcher.*} properties, so logging
+ * never shares threads with other Akka work. A full override config can be given by {@code caramel.logging.async.config}.
+ *
+ * @author Kweny
+ * @since 0.0.1
+ */
+public class AkkaAsyncBackend implements AsyncBackend {
+
+    private static final CaramelLogger logger = CaramelLogger.getLogger(AkkaAsyncBackend.class);
+
+    static final String NAME = "akka";
+
+    /** 日志 actor 专用的 dispatcher，与应用中的其它 Akka 任务隔离 */
+    static final String DISPATCHER = "caramel-logging-dispatcher";
+
+    private final int capacity;
+    private final int priorityCapacity;
+    private final boolean threadOrdered;
+    private final Shard[] shards;
+    private final boolean shardByLogger;
+    private final AsyncDeliveryPool pool;
+    private final AtomicInteger occupied = new AtomicInteger();
+    private final AtomicInteger priorityOccupied = new AtomicInteger();
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    /** 每个提交线程仍留在普通通道中的日志数，仅在 {@code lanes.ordering=thread} 时使用 */
+    private final ThreadLocal<AtomicInteger> backlogs = ThreadLocal.withInitial(AtomicInteger::new);
+
+    private volatile ActorSystem actorSystem;
+
+    public AkkaAsyncBackend() {
+        this.capacity = AsyncSystem.parseIntValue(System.getProperty("caramel.logging.async.capacity"), 65536);
+        this.priorityCapacity = AsyncLanes.priorityCapacity();
+        this.shards = new Shard[AsyncSharding.shards()];
+        for (int i = 0; i < this.shards.length; i++) {
+            this.shards[i] = new Shard(i);
+        }
+        this.shardByLogger = AsyncSharding.byLogger();
+        // 按 logger 分片时同一线程的日志分散在多个分片，无法只在当前分片内保持线程内顺序
+        this.threadOrdered = AsyncLanes.threadOrdered() && !(this.shardByLogger && this.shards.length > 1);
+        if (AsyncLanes.threadOrdered() && !this.threadOrdered) {
+            logger.warn("[Caramel Logging] lanes.ordering=thread requires shard-by=thread, priority events will overtake everything.");
+        }
+        boolean recycle = Boolean.parseBoolean(System.getProperty("caramel.logging.async.recycle", "false"));
+        this.pool = recycle ? new AsyncDeliveryPool(AsyncSystem.parseIntValue(System.getProperty("caramel.logging.async.pool-size"), 1024)) : null;
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public boolean available() {
+        try {
+            Class.forName("akka.actor.ActorSystem", false, AkkaAsyncBackend.class.getClassLoader());
+            return true;
+        } catch (Throwable t) {
+            return false;
+        }
+    }
+
+    /**
+     * 在后台线程上启动 Akka，启动完成前提交的日志暂存在队列中，调用线程无需等待
+     */
+    @Override
+    public void start() {
+        Thread initThread = new Thread(() -> {
+            try {
+                initializeSystem();
+                initializeActor();
+            } catch (Throwable t) {
+                logger.error(t, "[Caramel Logging] AkkaAsyncBackend failed to start, {} early events are pending.", this.occupied.get());
+            }
+        });
+        initThread.setName("caramel-async-logging-init");
+        initThread.start();
+    }
+
+    private void initializeSystem() {
+        String configContent = resolveAkkaConfig();
+        logger.info("[Caramel Logging] Initialize the AsyncSystem with the following config:\n{}", configContent);
+        Config config = ConfigFactory.parseString(configContent);
+        Config override = resolveOverrideConfig();
+        if (override != null) {
+            config = override.withFallback(config).resolve();
+        }
+        this.actorSystem = ActorSystem.create("CaramelAsyncLoggingSystem", config);
+    }
+
+    private void initializeActor() {
+        for (Shard shard : this.shards) {
+            String name = this.shards.length == 1 ? "CaramelAsyncLoggingActor" : "CaramelAsyncLoggingActor-" + shard.index;
+            shard.actor = this.actorSystem.actorOf(AsyncActor.props(this, shard).withDispatcher(DISPATCHER), name);
+            // 将启动期间暂存的日志交给 actor 处理
+            schedule(shard);
+        }
+    }
+
+    private String resolveAkkaConfig() {
+        StringBuilder builder = new StringBuilder();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(Objects.requireNonNull(AkkaAsyncBackend.class.getResourceAsStream("/async-system.conf"))))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                builder.append(line).append("\n");
+            }
+        } catch (Exception e) {
+            logger.error(e, "AsyncSystem config file failed to load.");
+        }
+
+        int parallelismMin = AsyncSystem.parseIntValue(System.getProperty("caramel.logging.async.parallelism-min"), 8);
+        int parallelismMax = AsyncSystem.parseIntValue(System.getProperty("caramel.logging.async.parallelism-max"), 64);
+        double parallelismFactor = AsyncSystem.parseDoubleValue(System.getProperty("caramel.logging.async.parallelism-factor"), 1.0);
+        int dispatcherThreads = AsyncSystem.parseIntValue(System.getProperty("caramel.logging.async.dispatcher.threads"), this.shards.length);
+        int dispatcherThroughput = AsyncSystem.parseIntValue(System.getProperty("caramel.logging.async.dispatcher.throughput"), 5);
+        int dispatcherPriority = AsyncSystem.parseIntValue(System.getProperty("caramel.logging.async.dispatcher.priority"), Thread.NORM_PRIORITY);
+        String dispatcherMailbox = System.getProperty("caramel.logging.async.dispatcher.mailbox", "akka.dispatch.SingleConsumerOnlyUnboundedMailbox");
+
+        return builder.toString()
+                .replace("${parallelism-min}", String.valueOf(parallelismMin))
+                .replace("${parallelism-max}", String.valueOf(parallelismMax))
+                .replace("${parallelism-factor}", String.valueOf(parallelismFactor))
+                .replace("${dispatcher-threads}", String.valueOf(dispatcherThreads))
+                .replace("${dispatcher-throughput}", String.valueOf(dispatcherThroughput))
+                .replace("${dispatcher-priority}", String.valueOf(dispatcherPriority))
+                .replace("${dispatcher-mailbox}", dispatcherMailbox);
+    }
+
+    /**
+     * 读取 {@code caramel.logging.async.config} 指定的覆盖配置，以 {@code classpath:} 开头时从类路径读取，否则视为文件路径。
+     * 覆盖配置优先，未配置的项仍使用 {@code async-system.conf} 中的值
+     *
+     * @return 覆盖配置，未指定或读取失败时返回 {@code null}
+     */
+    private Config resolveOverrideConfig() {
+        String location = System.getProperty("caramel.logging.async.config");
+        if (location == null || location.trim().isEmpty()) {
+            return null;
+        }
+        location = location.trim();
+        try {
+            if (location.startsWith("classpath:")) {
+                return ConfigFactory.parseResources(location.substring("classpath:".length()).replaceFirst("^/", ""));
+            }
+            return ConfigFactory.parseFile(new File(location));
+        } catch (Exception e) {
+            logger.error(e, "[Caramel Logging] AsyncSystem override config '{}' failed to load.", location);
+            return null;
+        }
+    }
+
+    /**
+     * @return 第一个分片的日志 actor，Akka 尚未启动完成时返回 {@code null}
+     */
+    public ActorRef actor() {
+        return this.shards[0].actor;
+    }
+
+    /** 第 {@code index} 个分片 */
+    Shard shard(int index) {
+        return this.shards[index];
+    }
+
+    @Override
+    public AsyncDelivery claim() {
+        return claim(false);
+    }
+
+    @Override
+    public AsyncDelivery claim(boolean priority) {
+        return claim(priority, -1);
+    }
+
+    @Override
+    public AsyncDelivery claim(boolean priority, long sourceThread) {
+        AtomicInteger counter = priority ? this.priorityOccupied : this.occupied;
+        if (counter.incrementAndGet() > (priority ? this.priorityCapacity : this.capacity)) {
+            counter.decrementAndGet();
+            return null;
+        }
+        AsyncDelivery delivery = this.pool != null ? this.pool.acquire() : AsyncDelivery.create();
+        delivery.shard = AsyncSharding.ofThread(sourceThread, this.shards.length);
+        return delivery;
+    }
+
+    @Override
+    public void submit(AsyncDelivery delivery) {
+        // 同一线程的提交序号递增，用于在高优先级日志之前找出同一线程更早的日志
+        delivery.sequence = this.submitted.incrementAndGet();
+        if (this.threadOrdered) {
+            AtomicInteger backlog = this.backlogs.get();
+            delivery.backlog = backlog;
+            if (!delivery.priority) {
+                backlog.incrementAndGet();
+            }
+        }
+        Shard shard = this.shards[this.shardByLogger ? AsyncSharding.ofLogger(delivery, this.shards.length) : delivery.shard];
+        (delivery.priority ? shard.priority : shard.queue).offer(delivery);
+        schedule(shard);
+    }
+
+    @Override
+    public boolean evictOldest() {
+        return evictOldest(false);
+    }
+
+    /**
+     * 优先丢弃当前线程所在分片中对应通道最早的日志，该分片为空时依次尝试其它分片
+     */
+    @Override
+    public boolean evictOldest(boolean priority) {
+        int start = AsyncSharding.ofCurrentThread(this.shards.length);
+        for (int i = 0; i < this.shards.length; i++) {
+            Shard shard = this.shards[(start + i) % this.shards.length];
+            AsyncDelivery oldest = (priority ? shard.priority : shard.queue).poll();
+            if (oldest != null) {
+                if (priority) {
+                    this.priorityOccupied.decrementAndGet();
+                } else {
+                    taken(oldest);
+                }
+                // 开启线程顺序时 actor 可能正遍历普通队列并持有该对象，复用后会被当作新日志移出队列，因此不放回对象池
+                if (priority || !this.threadOrdered) {
+                    recycle(oldest);
+                }
+                this.completed.incrementAndGet();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * actor 尚未创建时不做任何事，日志留在队列中，由 {@link #initializeActor()} 在创建 actor 后统一调度。
+     * 生产者先入队再读取 actor，启动线程先写入 actor 再调度，两者至少有一方会发出处理信号。
+     */
+    private void schedule(Shard shard) {
+        ActorRef ref = shard.actor;
+        if (ref != null && !shard.scheduled.get() && shard.scheduled.compareAndSet(false, true)) {
+            ref.tell(AsyncActor.DRAIN, ActorRef.noSender());
+        }
+    }
+
+    /**
+     * 由 {@link AsyncActor} 取出所在分片的下一条待处理的日志，高优先级通道优先；
+     * 开启 {@code caramel.logging.async.lanes.ordering=thread} 时，先取出同一线程更早提交的普通日志
+     */
+    AsyncDelivery poll(Shard shard) {
+        AsyncDelivery delivery = shard.promoted.poll();
+        if (delivery != null) {
+            return delivery;
+        }
+        delivery = shard.held;
+        if (delivery != null) {
+            shard.held = null;
+            return delivery;
+        }
+        delivery = shard.priority.poll();
+        if (delivery != null) {
+            this.priorityOccupied.decrementAndGet();
+            if (this.threadOrdered && promote(shard, delivery)) {
+                shard.held = delivery;
+                return shard.promoted.poll();
+            }
+            return delivery;
+        }
+        delivery = shard.queue.poll();
+        if (delivery != null) {
+            taken(delivery);
+        }
+        return delivery;
+    }
+
+    /** 普通日志离开普通队列 */
+    private void taken(AsyncDelivery delivery) {
+        this.occupied.decrementAndGet();
+        if (delivery.backlog != null) {
+            delivery.backlog.decrementAndGet();
+        }
+    }
+
+    /**
+     * 将普通队列中与高优先级日志来自同一提交线程、且提交更早的日志移入 {@link Shard#promoted}；
+     * 该线程在普通通道中没有日志时不扫描队列，找齐该线程的全部日志或遇到更晚提交的日志后停止扫描
+     *
+     * @return 是否有日志被提前
+     */
+    private boolean promote(Shard shard, AsyncDelivery urgent) {
+        AtomicInteger backlog = urgent.backlog;
+        int remaining = backlog != null ? backlog.get() : 0;
+        if (remaining <= 0) {
+            return false;
+        }
+        for (AsyncDelivery candidate : shard.queue) {
+            if (candidate.backlog != backlog) {
+                continue;
+            }
+            if (candidate.sequence > urgent.sequence) {
+                // 同一线程的日志在队列中按提交顺序排列，之后的都更晚
+                break;
+            }
+            // evictOldest 此时不复用丢弃的对象，与其竞争时只有一方能移除成功
+            if (shard.queue.remove(candidate)) {
+                taken(candidate);
+                shard.promoted.add(candidate);
+            }
+            if (--remaining == 0) {
+                break;
+            }
+        }
+        return !shard.promoted.isEmpty();
+    }
+
+    /** 由 {@link AsyncActor} 在日志处理完毕后归还投递对象，开启 {@code caramel.logging.async.recycle} 时清空后放回对象池 */
+    void recycle(AsyncDelivery delivery) {
+        if (this.pool != null) {
+            this.pool.release(delivery);
+        }
+    }
+
+    /** 由 {@link AsyncActor} 在每条日志处理完毕后回调 */
+    void completed() {
+        this.completed.incrementAndGet();
+    }
+
+    /** 由 {@link AsyncActor} 在一批日志处理完毕后回调 */
+    void completed(int count) {
+        this.completed.addAndGet(count);
+    }
+
+    /** 由 {@link AsyncActor} 在一轮处理结束后回调，队列仍有日志时继续调度 */
+    void drained(Shard shard, ActorRef self) {
+        if (!shard.isEmpty()) {
+            self.tell(AsyncActor.DRAIN, ActorRef.noSender());
+            return;
+        }
+        shard.scheduled.set(false);
+        if (!shard.isEmpty()) {
+            schedule(shard);
+        }
+    }
+
+    @Override
+    public long pending() {
+        return Math.max(0, this.submitted.get() - this.completed.get());
+    }
+
+    @Override
+    public boolean flush(Duration timeout) {
+        long target = this.submitted.get();
+        return AsyncSystem.awaitUntil(() -> this.completed.get() >= target, timeout);
+    }
+
+    @Override
+    public void shutdown(Duration timeout) {
+        flush(timeout);
+        ActorSystem system = this.actorSystem;
+        if (system != null) {
+            system.terminate();
+        }
+    }
+
+    /** 一个分片：独立的普通队列、高优先级队列与负责处理它们的 actor */
+    static final class Shard {
+
+        final int index;
+        final Queue<AsyncDelivery> queue = new ConcurrentLinkedQueue<>();
+        final Queue<AsyncDelivery> priority = new ConcurrentLinkedQueue<>();
+        final AtomicBoolean scheduled = new AtomicBoolean();
+        volatile ActorRef actor;
+
+        /** 为保持线程内顺序而提前的普通日志，仅由 actor 访问 */
+        final Queue<AsyncDelivery> promoted = new ArrayDeque<>();
+        /** 等待 {@link #promoted} 处理完毕的高优先级日志，仅由 actor 访问 */
+        AsyncDelivery held;
+
+        Shard(int index) {
+            this.index = index;
+        }
+
+        boolean isEmpty() {
+            return this.held == null && this.promoted.isEmpty() && this.priority.isEmpty() && this.queue.isEmpty();
+        }
+
+    }
+
+}
@@ -18,10 +18,7 @@ package com.woutis.caramel.logging.async;
 
 import akka.actor.AbstractActor;
 import akka.actor.Props;
-import com.woutis.caramel.logging.LoggingContext;
-import com.woutis.caramel.logging.level.CustomLevelHandler;
-import com.woutis.caramel.logging.message.CaramelMessageFactory;
-import org.slf4j.Logger;
+import com.woutis.caramel.logging.CaramelLogger;
 
 /**
  * @author Kweny
@@ -29,165 +26,83 @@ import org.slf4j.Logger;
  */
 public class AsyncActor extends AbstractActor {
 
-    public static Props props() {
-        return Props.create(AsyncActor.class);
+    private static final CaramelLogger logger = CaramelLogger.getLogger(AsyncActor.class);
+
+    /** 通知 actor 处理 {@link AkkaAsyncBackend} 队列中的日志 */
+    static final Object DRAIN = new Object();
+
+    /** 每轮最多处理的日志数量，处理完后让出调度线程 */
+    private static final int DRAIN_LIMIT = 256;
+
+    public static Props props(AkkaAsyncBackend backend, AkkaAsyncBackend.Shard shard) {
+        return Props.create(AsyncActor.class, backend, shard);
+    }
+
+    private final AkkaAsyncBackend backend;
+    private final AkkaAsyncBackend.Shard shard;
+    private final AsyncDelivery[] batch;
+
+    public AsyncActor(AkkaAsyncBackend backend, AkkaAsyncBackend.Shard shard) {
+        this.backend = backend;
+        this.shard = shard;
+        int batchSize = AsyncHandler.batchSize();
+        this.batch = batchSize > 1 ? new AsyncDelivery[batchSize] : null;
     }
 
     @Override
     public Receive createReceive() {
         return receiveBuilder()
-                .match(AsyncDelivery.class, this::receipt)
+                .matchEquals(DRAIN, this::drain)
                 .matchAny(this::unhandled)
                 .build();
     }
 
-    private void receipt(AsyncDelivery delivery) {
-        LoggingContext._sourceStackTrace(delivery.sourceStackTrace());
-        LoggingContext._sourceThread(delivery.sourceThread());
-        LoggingContext.set(delivery.context());
-        if (delivery.customLevel() != null) {
-            log(delivery);
-        } else {
-            switch (delivery.level()) {
-                case TRACE:
-                    trace(delivery);
-                    break;
-                case DEBUG:
-                    debug(delivery);
-                    break;
-                case INFO:
-                    info(delivery);
-                    break;
-                case WARN:
-                    warn(delivery);
-                    break;
-                case ERROR:
-                    error(delivery);
-                    break;
-                default:
-                    break;
-            }
-        }
-        LoggingContext.release();
-    }
-
-    private void log(AsyncDelivery delivery) {
-        CustomLevelHandler handler = delivery.customLevelHandler();
-        handler.log(delivery.logger(), delivery.customLevel(), delivery.marker(), delivery.thrown(), delivery.message(), delivery.arguments());
-    }
-
-    private void error(AsyncDelivery delivery) {
-        Logger logger = delivery.logger();
-        if (delivery.marker() == null) {
-            if (logger.isErrorEnabled()) {
-                if (delivery.thrown() == null) {
-                    logger.error(delivery.message(), delivery.arguments());
-                } else {
-                    String msg = CaramelMessageFactory.format(delivery.message(), delivery.arguments());
-                    logger.error(msg, delivery.thrown());
-                }
+    private void drain(Object signal) {
+        if (this.batch == null) {
+            AsyncDelivery delivery;
+            for (int i = 0; i < DRAIN_LIMIT && (delivery = this.backend.poll(this.shard)) != null; i++) {
+                receipt(delivery);
             }
         } else {
-            if (logger.isErrorEnabled(delivery.marker())) {
-                if (delivery.thrown() == null) {
-                    logger.error(delivery.marker(), delivery.message(), delivery.arguments());
-                } else {
-                    String msg = CaramelMessageFactory.format(delivery.message(), delivery.arguments());
-                    logger.error(delivery.marker(), msg, delivery.thrown());
+            int drained = 0;
+            while (drained < DRAIN_LIMIT) {
+                int size = 0;
+                AsyncDelivery delivery;
+                while (size < this.batch.length && (delivery = this.backend.poll(this.shard)) != null) {
+                    this.batch[size++] = delivery;
                 }
-            }
-        }
-    }
-
-    private void warn(AsyncDelivery delivery) {
-        Logger logger = delivery.logger();
-        if (delivery.marker() == null) {
-            if (logger.isWarnEnabled()) {
-                if (delivery.thrown() == null) {
-                    logger.warn(delivery.message(), delivery.arguments());
-                } else {
-                    String msg = CaramelMessageFactory.format(delivery.message(), delivery.arguments());
-                    logger.warn(msg, delivery.thrown());
-                }
-            }
-        } else {
-            if (logger.isWarnEnabled(delivery.marker())) {
-                if (delivery.thrown() == null) {
-                    logger.warn(delivery.marker(), delivery.message(), delivery.arguments());
-                } else {
-                    String msg = CaramelMessageFactory.format(delivery.message(), delivery.arguments());
-                    logger.warn(delivery.marker(), msg, delivery.thrown());
-                }
-            }
-        }
-    }
-
-    private void info(AsyncDelivery delivery) {
-        Logger logger = delivery.logger();
-        if (delivery.marker() == null) {
-            if (logger.isInfoEnabled()) {
-                if (delivery.thrown() == null) {
-                    logger.info(delivery.message(), delivery.arguments());
-                } else {
-                    String msg = CaramelMessageFactory.format(delivery.message(), delivery.arguments());
-                    logger.info(msg, delivery.thrown());
-                }
-            }
-        } else {
-            if (logger.isInfoEnabled(delivery.marker())) {
-                if (delivery.thrown() == null) {
-                    logger.info(delivery.marker(), delivery.message(), delivery.arguments());
-                } else {
-                    String msg = CaramelMessageFactory.format(delivery.message(), delivery.arguments());
-                    logger.info(delivery.marker(), msg, delivery.thrown());
+                if (size == 0) {
+                    break;
                 }
+                receipt(size);
+                drained += size;
             }
         }
+        this.backend.drained(this.shard, getSelf());
     }
 
-    private void debug(AsyncDelivery delivery) {
-        Logger logger = delivery.logger();
-        if (delivery.marker() == null) {
-            if (logger.isDebugEnabled()) {
-                if (delivery.thrown() == null) {
-                    logger.debug(delivery.message(), delivery.arguments());
-                } else {
-                    String msg = CaramelMessageFactory.format(delivery.message(), delivery.arguments());
-                    logger.debug(msg, delivery.thrown());
-                }
-            }
-        } else {
-            if (logger.isDebugEnabled(delivery.marker())) {
-                if (delivery.thrown() == null) {
-                    logger.debug(delivery.marker(), delivery.message(), delivery.arguments());
-                } else {
-                    String msg = CaramelMessageFactory.format(delivery.message(), delivery.arguments());
-                    logger.debug(delivery.marker(), msg, delivery.thrown());
-                }
-            }
+    private void receipt(AsyncDelivery delivery) {
+        try {
+            AsyncHandler.handle(delivery);
+        } catch (Throwable t) {
+            logger.error(t, "[Caramel Logging] AsyncActor failed to handle delivery.");
+        } finally {
+            this.backend.recycle(delivery);
+            this.backend.completed();
         }
     }
 
-    private void trace(AsyncDelivery delivery) {
-        Logger logger = delivery.logger();
-        if (delivery.marker() == null) {
-            if (logger.isTraceEnabled()) {
-                if (delivery.thrown() == null) {
-                    logger.trace(delivery.message(), delivery.arguments());
-                } else {
-                    String msg = CaramelMessageFactory.format(delivery.message(), delivery.arguments());
-                    logger.trace(msg, delivery.thrown());
-                }
-            }
-        } else {
-            if (logger.isTraceEnabled(delivery.marker())) {
-                if (delivery.thrown() == null) {
-                    logger.trace(delivery.marker(), delivery.message(), delivery.arguments());
-                } else {
-                    String msg = CaramelMessageFactory.format(delivery.message(), delivery.arguments());
-                    logger.trace(delivery.marker(), msg, delivery.thrown());
-                }
+    private void receipt(int size) {
+        try {
+            AsyncHandler.handleBatch(this.batch, size);
+        } catch (Throwable t) {
+            logger.error(t, "[Caramel Logging] AsyncActor failed to handle batch.");
+        } finally {
+            for (int i = 0; i < size; i++) {
+                this.backend.recycle(this.batch[i]);
+                this.batch[i] = null;
             }
+            this.backend.completed(size);
         }
     }
 }
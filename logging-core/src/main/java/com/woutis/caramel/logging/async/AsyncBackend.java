@@ -0,0 +1,108 @@
+/*
+ * Copyright 2018-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.woutis.caramel.logging.async;
+
+import java.time.Duration;
+
+/**
+ * Async logging engine SPI
+ *
+ * <p>Implementations are discovered through {@link java.util.ServiceLoader} (see
+ * {@code META-INF/services/com.woutis.caramel.logging.async.AsyncBackend}) and selected by {@link #name()} using the
+ * {@code caramel.logging.async.engine} system property. The first available backend is used when nothing matches.
+ *
+ * @author Kweny
+ * @since 0.0.1
+ */
+public interface AsyncBackend {
+
+    /** 引擎名称，与 {@code caramel.logging.async.engine} 的取值对应 */
+    String name();
+
+    /** 当前环境下是否可用，例如依赖的类库是否存在 */
+    default boolean available() {
+        return true;
+    }
+
+    /**
+     * 启动引擎，不应阻塞调用方；启动完成前提交的日志需由引擎自行暂存，并在就绪后按顺序处理
+     */
+    void start();
+
+    /**
+     * 占用一个容量并获取待填充的投递对象，填充后必须通过 {@link #submit(AsyncDelivery)} 提交
+     *
+     * @return 投递对象，引擎已达到容量上限时返回 {@code null}（不阻塞，由 {@link OverflowPolicy} 决定后续处理）
+     */
+    AsyncDelivery claim();
+
+    /**
+     * 按通道占用容量，启用 {@link AsyncLanes} 时由 {@link AsyncSystem} 调用；不区分通道的引擎共用同一容量
+     *
+     * @param priority 是否占用高优先级通道，提交时通过 {@link AsyncDelivery#priority} 区分
+     */
+    default AsyncDelivery claim(boolean priority) {
+        return claim();
+    }
+
+    /**
+     * 代替 {@code sourceThread} 占用容量，由 {@link AsyncSpill} 回放时调用；按线程分片的引擎应使日志进入原生产者线程的分片，
+     * 以免回放的日志被该线程之后的新日志超过
+     *
+     * @param sourceThread 原生产者线程的 id，未知时为 {@code -1}，此时按当前线程选择分片
+     */
+    default AsyncDelivery claim(boolean priority, long sourceThread) {
+        return claim(priority);
+    }
+
+    /**
+     * 丢弃最早的一条尚未处理的日志，以便为新日志腾出容量
+     *
+     * @return 是否丢弃成功，不支持该操作的引擎返回 {@code false}
+     */
+    default boolean evictOldest() {
+        return false;
+    }
+
+    /**
+     * 丢弃指定通道中最早的一条尚未处理的日志，不区分通道的引擎等同于 {@link #evictOldest()}
+     */
+    default boolean evictOldest(boolean priority) {
+        return evictOldest();
+    }
+
+    void submit(AsyncDelivery delivery);
+
+    /** 已提交但尚未处理完毕的日志数量 */
+    long pending();
+
+    /**
+     * 等待已提交的日志全部处理完毕
+     *
+     * @param timeout 最长等待时间
+     * @return 是否在超时前处理完毕
+     */
+    boolean flush(Duration timeout);
+
+    /**
+     * 在超时时间内尽量处理完已提交的日志，然后停止引擎
+     *
+     * @param timeout 最长等待时间
+     */
+    void shutdown(Duration timeout);
+
+}
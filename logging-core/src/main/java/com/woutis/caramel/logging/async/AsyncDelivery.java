@@ -16,6 +16,7 @@
 
 package com.woutis.caramel.logging.async;
 
+import com.woutis.caramel.logging.ThreadSnapshot;
 import com.woutis.caramel.logging.level.CustomLevel;
 import com.woutis.caramel.logging.level.CustomLevelHandler;
 import org.slf4j.Logger;
@@ -23,6 +24,7 @@ import org.slf4j.Marker;
 import org.slf4j.event.Level;
 
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * @author Kweny
@@ -71,8 +73,54 @@ public class AsyncDelivery {
     private String message;
     private Object[] arguments;
     private Map<String, ?> context;
+    private StackTraceElement sourceLocation;
     private StackTraceElement[] sourceStackTrace;
-    private Thread sourceThread;
+    private ThreadSnapshot sourceThread;
+
+    /** 环形缓冲区中的槽位序号（{@link AsyncRingBuffer}），或提交序号（{@link AkkaAsyncBackend}） */
+    long sequence;
+
+    /** 申请时选定的分片，提交时进入该分片，参见 {@link AsyncSharding} */
+    int shard;
+
+    /** 是否占用高优先级通道，参见 {@link AsyncLanes} */
+    boolean priority;
+
+    /** 提交线程仍留在普通通道中的日志数，仅在 {@code lanes.ordering=thread} 时由 {@link AkkaAsyncBackend} 使用 */
+    AtomicInteger backlog;
+
+    /** 申请时记录的时间，提交时改为入队时间，仅由 {@link AsyncMetrics} 使用 */
+    long timestamp;
+
+    /** 引擎已满且溢出策略为 {@link OverflowPolicy#SYNCHRONOUS} 时，在调用线程上同步输出 */
+    private boolean synchronous;
+
+    /** 写入 {@link AsyncSpill}，由其回放线程重新投递 */
+    private boolean spilled;
+
+    /**
+     * 清空所有字段，以便复用当前实例时不再持有上一条日志的参数、上下文等引用
+     */
+    public AsyncDelivery clear() {
+        this.logger = null;
+        this.level = null;
+        this.customLevelHandler = null;
+        this.customLevel = null;
+        this.marker = null;
+        this.thrown = null;
+        this.message = null;
+        this.arguments = null;
+        this.context = null;
+        this.sourceLocation = null;
+        this.sourceStackTrace = null;
+        this.sourceThread = null;
+        this.synchronous = false;
+        this.spilled = false;
+        this.priority = false;
+        this.backlog = null;
+        this.timestamp = 0;
+        return this;
+    }
 
     // ----- setter ----- beginning
     public AsyncDelivery logger(Logger logger) {
@@ -120,15 +168,30 @@ public class AsyncDelivery {
         return this;
     }
 
+    public AsyncDelivery sourceLocation(StackTraceElement sourceLocation) {
+        this.sourceLocation = sourceLocation;
+        return this;
+    }
+
     public AsyncDelivery sourceStackTrace(StackTraceElement[] sourceStackTrace) {
         this.sourceStackTrace = sourceStackTrace;
         return this;
     }
 
-    public AsyncDelivery sourceThread(Thread sourceThread) {
+    public AsyncDelivery sourceThread(ThreadSnapshot sourceThread) {
         this.sourceThread = sourceThread;
         return this;
     }
+
+    AsyncDelivery synchronous(boolean synchronous) {
+        this.synchronous = synchronous;
+        return this;
+    }
+
+    AsyncDelivery spilled(boolean spilled) {
+        this.spilled = spilled;
+        return this;
+    }
     // ----- setter ----- ending
 
     // ----- getter ----- beginning
@@ -168,12 +231,24 @@ public class AsyncDelivery {
         return context;
     }
 
+    public StackTraceElement sourceLocation() {
+        return sourceLocation;
+    }
+
     public StackTraceElement[] sourceStackTrace() {
         return sourceStackTrace;
     }
 
-    public Thread sourceThread() {
+    public ThreadSnapshot sourceThread() {
         return this.sourceThread;
     }
+
+    boolean synchronous() {
+        return this.synchronous;
+    }
+
+    boolean spilled() {
+        return this.spilled;
+    }
     // ----- getter ----- ending
 }
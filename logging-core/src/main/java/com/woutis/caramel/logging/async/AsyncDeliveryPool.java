@@ -0,0 +1,114 @@
+/*
+ * Copyright 2018-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.woutis.caramel.logging.async;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Lock-free bounded pool of cleared {@link AsyncDelivery} instances shared by all threads.
+ *
+ * <p>The pool is a multi-producer multi-consumer array queue: every slot carries a sequence number telling whether it
+ * may be filled or emptied for the current lap, so consumer threads release instances and producer threads acquire
+ * them without locks, node allocation or ABA hazards. When the pool is empty a new instance is allocated; when it is
+ * full the released instance is left to the garbage collector.
+ *
+ * @author Kweny
+ * @since 0.0.1
+ */
+public class AsyncDeliveryPool {
+
+    private final AtomicReferenceArray<AsyncDelivery> slots;
+    /** 各槽位的序号：等于位置 p 时可由第 p 次归还写入，等于 p + 1 时可由第 p 次取出读取 */
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * @param size 池中最多保留的实例数量，向上取整为 2 的幂
+     */
+    public AsyncDeliveryPool(int size) {
+        int capacity = Math.max(2, Integer.highestOneBit(Math.max(1, size - 1)) << 1);
+        this.slots = new AtomicReferenceArray<>(capacity);
+        this.sequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            this.sequences.set(i, i);
+        }
+        this.mask = capacity - 1;
+    }
+
+    public int capacity() {
+        return this.mask + 1;
+    }
+
+    /**
+     * 从池中取出一个已清空的实例，池中没有可用实例时新建
+     */
+    public AsyncDelivery acquire() {
+        long position = this.head.get();
+        while (true) {
+            int index = (int) (position & this.mask);
+            long difference = this.sequences.get(index) - (position + 1);
+            if (difference == 0) {
+                if (this.head.compareAndSet(position, position + 1)) {
+                    AsyncDelivery delivery = this.slots.get(index);
+                    this.slots.lazySet(index, null);
+                    this.sequences.set(index, position + this.mask + 1);
+                    return delivery;
+                }
+                position = this.head.get();
+            } else if (difference < 0) {
+                return AsyncDelivery.create();
+            } else {
+                position = this.head.get();
+            }
+        }
+    }
+
+    /**
+     * 清空实例并放回池中，调用后不得再使用该实例
+     */
+    public void release(AsyncDelivery delivery) {
+        delivery.clear();
+        long position = this.tail.get();
+        while (true) {
+            int index = (int) (position & this.mask);
+            long difference = this.sequences.get(index) - position;
+            if (difference == 0) {
+                if (this.tail.compareAndSet(position, position + 1)) {
+                    this.slots.lazySet(index, delivery);
+                    this.sequences.set(index, position + 1);
+                    return;
+                }
+                position = this.tail.get();
+            } else if (difference < 0) {
+                return;
+            } else {
+                position = this.tail.get();
+            }
+        }
+    }
+
+    /** 池中当前保留的实例数量，并发修改时为近似值 */
+    public int size() {
+        return (int) Math.max(0, Math.min(this.tail.get() - this.head.get(), capacity()));
+    }
+
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2018-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.woutis.caramel.logging.async;
+
+import akka.dispatch.DispatcherPrerequisites;
+import akka.dispatch.ExecutorServiceConfigurator;
+import akka.dispatch.ExecutorServiceFactory;
+import com.typesafe.config.Config;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Executor of the {@code caramel-logging-dispatcher}: a fixed pool of threads with a configurable priority.
+ *
+ * <p>Referenced by FQCN from the {@code executor} setting in {@code async-system.conf} and configured by its
+ * {@code caramel-executor} block, which Akka's built-in executors cannot express.
+ *
+ * @author Kweny
+ * @since 0.0.1
+ */
+public class AsyncExecutorConfigurator extends ExecutorServiceConfigurator {
+
+    private final int threads;
+    private final int priority;
+
+    public AsyncExecutorConfigurator(Config config, DispatcherPrerequisites prerequisites) {
+        super(config, prerequisites);
+        Config executor = config.getConfig("caramel-executor");
+        this.threads = Math.max(1, executor.getInt("threads"));
+        this.priority = Math.min(Thread.MAX_PRIORITY, Math.max(Thread.MIN_PRIORITY, executor.getInt("thread-priority")));
+    }
+
+    @Override
+    public ExecutorServiceFactory createExecutorServiceFactory(String id, ThreadFactory threadFactory) {
+        ThreadFactory prioritized = runnable -> {
+            Thread thread = threadFactory.newThread(runnable);
+            thread.setPriority(this.priority);
+            return thread;
+        };
+        return () -> Executors.newFixedThreadPool(this.threads, prioritized);
+    }
+
+}
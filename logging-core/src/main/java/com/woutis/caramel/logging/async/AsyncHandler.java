@@ -0,0 +1,272 @@
+/*
+ * Copyright 2018-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.woutis.caramel.logging.async;
+
+import com.woutis.caramel.logging.CaramelLogger;
+import com.woutis.caramel.logging.LoggingContext;
+import com.woutis.caramel.logging.ThreadSnapshot;
+import com.woutis.caramel.logging.level.CustomLevelHandler;
+import com.woutis.caramel.logging.message.CaramelMessageFactory;
+import org.slf4j.Logger;
+
+/**
+ * Writes an {@link AsyncDelivery} to the underlying logger on the consuming thread, shared by all async engines.
+ *
+ * @author Kweny
+ * @since 0.0.1
+ */
+public class AsyncHandler {
+
+    private static final CaramelLogger logger = CaramelLogger.getLogger(AsyncHandler.class);
+
+    private AsyncHandler() {}
+
+    /**
+     * 消费者每次批量输出的最大日志数量，由 {@code caramel.logging.async.batch-size} 指定，默认为 1 即逐条输出
+     */
+    static int batchSize() {
+        return Math.max(1, AsyncSystem.parseIntValue(System.getProperty("caramel.logging.async.batch-size"), 1));
+    }
+
+    public static void handle(AsyncDelivery delivery) {
+        bind(delivery);
+        AsyncMetrics metrics = AsyncSystem.instance().metrics();
+        long enqueued = delivery.timestamp;
+        long start = metrics.now();
+        try {
+            dispatch(delivery);
+        } catch (Throwable t) {
+            metrics.failed();
+            throw t;
+        } finally {
+            LoggingContext._unbind();
+        }
+        metrics.handled(enqueued, start);
+    }
+
+    /**
+     * 批量输出 {@code batch} 中的前 {@code size} 条日志，整批通过 {@link CustomLevelHandler#batch(Runnable)} 写出。
+     * 每条日志之间只替换绑定的上下文快照，整批结束后统一解除；单条日志的异常不影响同批次的其它日志
+     */
+    public static void handleBatch(AsyncDelivery[] batch, int size) {
+        CustomLevelHandler handler = CaramelLogger.levelHandler();
+        AsyncMetrics metrics = AsyncSystem.instance().metrics();
+        Runnable writes = () -> {
+            for (int i = 0; i < size; i++) {
+                AsyncDelivery delivery = batch[i];
+                bind(delivery);
+                long start = metrics.now();
+                try {
+                    dispatch(delivery);
+                    metrics.handled(delivery.timestamp, start);
+                } catch (Throwable t) {
+                    metrics.failed();
+                    logger.error(t, "[Caramel Logging] AsyncHandler failed to handle delivery.");
+                }
+            }
+        };
+        try {
+            if (handler != null) {
+                handler.batch(writes);
+            } else {
+                writes.run();
+            }
+        } finally {
+            LoggingContext._unbind();
+        }
+    }
+
+    /**
+     * 在消费线程上绑定日志的上下文快照，只替换引用，见 {@link LoggingContext#_bind}
+     */
+    private static void bind(AsyncDelivery delivery) {
+        LoggingContext._bind(delivery.context(), delivery.sourceLocation(), delivery.sourceStackTrace(), delivery.sourceThread());
+    }
+
+    /**
+     * 在产生日志的线程上直接输出，该线程的上下文即为日志的上下文，因此不安装也不清理上下文数据。
+     * 结束后恢复之前的日志源信息，消费线程输出日志的过程中同步输出的嵌套日志不影响外层日志
+     */
+    public static void handleInline(AsyncDelivery delivery) {
+        StackTraceElement sourceLocation = LoggingContext._sourceLocation();
+        StackTraceElement[] sourceStackTrace = LoggingContext._sourceStackTrace();
+        ThreadSnapshot sourceThread = LoggingContext._sourceThread();
+        LoggingContext._sourceLocation(delivery.sourceLocation());
+        LoggingContext._sourceStackTrace(delivery.sourceStackTrace());
+        LoggingContext._sourceThread(delivery.sourceThread());
+        try {
+            dispatch(delivery);
+        } finally {
+            LoggingContext._sourceLocation(sourceLocation);
+            LoggingContext._sourceStackTrace(sourceStackTrace);
+            LoggingContext._sourceThread(sourceThread);
+        }
+    }
+
+    /**
+     * 当前线程是否正在输出异步日志，即消费线程或同步输出日志的调用线程；此时 appender 等再次记录的异步日志不能等待队列空位
+     */
+    static boolean handling() {
+        return LoggingContext._sourceThread() != null;
+    }
+
+    private static void dispatch(AsyncDelivery delivery) {
+        if (delivery.customLevel() != null) {
+            log(delivery);
+        } else {
+            switch (delivery.level()) {
+                case TRACE:
+                    trace(delivery);
+                    break;
+                case DEBUG:
+                    debug(delivery);
+                    break;
+                case INFO:
+                    info(delivery);
+                    break;
+                case WARN:
+                    warn(delivery);
+                    break;
+                case ERROR:
+                    error(delivery);
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    private static void log(AsyncDelivery delivery) {
+        CustomLevelHandler handler = delivery.customLevelHandler();
+        handler.log(delivery.logger(), delivery.customLevel(), delivery.marker(), delivery.thrown(), delivery.message(), delivery.arguments());
+    }
+
+    private static void error(AsyncDelivery delivery) {
+        Logger logger = delivery.logger();
+        if (delivery.marker() == null) {
+            if (logger.isErrorEnabled()) {
+                if (delivery.thrown() == null) {
+                    logger.error(delivery.message(), delivery.arguments());
+                } else {
+                    String msg = CaramelMessageFactory.format(delivery.message(), delivery.arguments());
+                    logger.error(msg, delivery.thrown());
+                }
+            }
+        } else {
+            if (logger.isErrorEnabled(delivery.marker())) {
+                if (delivery.thrown() == null) {
+                    logger.error(delivery.marker(), delivery.message(), delivery.arguments());
+                } else {
+                    String msg = CaramelMessageFactory.format(delivery.message(), delivery.arguments());
+                    logger.error(delivery.marker(), msg, delivery.thrown());
+                }
+            }
+        }
+    }
+
+    private static void warn(AsyncDelivery delivery) {
+        Logger logger = delivery.logger();
+        if (delivery.marker() == null) {
+            if (logger.isWarnEnabled()) {
+                if (delivery.thrown() == null) {
+                    logger.warn(delivery.message(), delivery.arguments());
+                } else {
+                    String msg = CaramelMessageFactory.format(delivery.message(), delivery.arguments());
+                    logger.warn(msg, delivery.thrown());
+                }
+            }
+        } else {
+            if (logger.isWarnEnabled(delivery.marker())) {
+                if (delivery.thrown() == null) {
+                    logger.warn(delivery.marker(), delivery.message(), delivery.arguments());
+                } else {
+                    String msg = CaramelMessageFactory.format(delivery.message(), delivery.arguments());
+                    logger.warn(delivery.marker(), msg, delivery.thrown());
+                }
+            }
+        }
+    }
+
+    private static void info(AsyncDelivery delivery) {
+        Logger logger = delivery.logger();
+        if (delivery.marker() == null) {
+            if (logger.isInfoEnabled()) {
+                if (delivery.thrown() == null) {
+                    logger.info(delivery.message(), delivery.arguments());
+                } else {
+                    String msg = CaramelMessageFactory.format(delivery.message(), delivery.arguments());
+                    logger.info(msg, delivery.thrown());
+                }
+            }
+        } else {
+            if (logger.isInfoEnabled(delivery.marker())) {
+                if (delivery.thrown() == null) {
+                    logger.info(delivery.marker(), delivery.message(), delivery.arguments());
+                } else {
+                    String msg = CaramelMessageFactory.format(delivery.message(), delivery.arguments());
+                    logger.info(delivery.marker(), msg, delivery.thrown());
+                }
+            }
+        }
+    }
+
+    private static void debug(AsyncDelivery delivery) {
+        Logger logger = delivery.logger();
+        if (delivery.marker() == null) {
+            if (logger.isDebugEnabled()) {
+                if (delivery.thrown() == null) {
+                    logger.debug(delivery.message(), delivery.arguments());
+                } else {
+                    String msg = CaramelMessageFactory.format(delivery.message(), delivery.arguments());
+                    logger.debug(msg, delivery.thrown());
+                }
+            }
+        } else {
+            if (logger.isDebugEnabled(delivery.marker())) {
+                if (delivery.thrown() == null) {
+                    logger.debug(delivery.marker(), delivery.message(), delivery.arguments());
+                } else {
+                    String msg = CaramelMessageFactory.format(delivery.message(), delivery.arguments());
+                    logger.debug(delivery.marker(), msg, delivery.thrown());
+                }
+            }
+        }
+    }
+
+    private static void trace(AsyncDelivery delivery) {
+        Logger logger = delivery.logger();
+        if (delivery.marker() == null) {
+            if (logger.isTraceEnabled()) {
+                if (delivery.thrown() == null) {
+                    logger.trace(delivery.message(), delivery.arguments());
+                } else {
+                    String msg = CaramelMessageFactory.format(delivery.message(), delivery.arguments());
+                    logger.trace(msg, delivery.thrown());
+                }
+            }
+        } else {
+            if (logger.isTraceEnabled(delivery.marker())) {
+                if (delivery.thrown() == null) {
+                    logger.trace(delivery.marker(), delivery.message(), delivery.arguments());
+                } else {
+                    String msg = CaramelMessageFactory.format(delivery.message(), delivery.arguments());
+                    logger.trace(delivery.marker(), msg, delivery.thrown());
+                }
+            }
+        }
+    }
+}
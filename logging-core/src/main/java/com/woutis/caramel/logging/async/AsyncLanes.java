@@ -0,0 +1,66 @@
+/*
+ * Copyright 2018-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.woutis.caramel.logging.async;
+
+import org.slf4j.event.Level;
+
+/**
+ * Severity lanes, letting severe events overtake a backlog of verbose ones.
+ *
+ * <p>With {@code caramel.logging.async.lanes} set to {@code true}, events at {@code caramel.logging.async.lanes.priority-level}
+ * (default {@code WARN}) or more severe are claimed from a separate priority lane, with its own capacity
+ * ({@code caramel.logging.async.lanes.priority.capacity}, default {@code 8192}) and its own overflow handling
+ * ({@code caramel.logging.async.lanes.priority.overflow.*}, falling back to {@code caramel.logging.async.overflow.*}).
+ * The remaining events use {@code caramel.logging.async.capacity} and {@code caramel.logging.async.overflow.*} as before.
+ *
+ * <p>The akka engine drains the priority lane of a shard before its normal lane. With
+ * {@code caramel.logging.async.lanes.ordering} set to {@code thread}, a priority event still waits for the earlier
+ * events of its own thread, which are taken out of the normal lane ahead of it, so only the backlog of other threads
+ * is overtaken. Each thread's count of events still in the normal lane is tracked, so the normal lane is only scanned
+ * when the thread has some left, and only up to the last of them. This ordering needs every event of a thread in the
+ * same shard and is ignored when more than one shard is split by logger ({@code caramel.logging.async.shard-by=logger}).
+ * The default {@code none} lets priority events overtake everything. Engines without lanes keep a single FIFO order and only apply the per-lane capacity handling.
+ *
+ * @author Kweny
+ * @since 0.0.1
+ */
+final class AsyncLanes {
+
+    static final String ORDERING_NONE = "none";
+    static final String ORDERING_THREAD = "thread";
+
+    private AsyncLanes() {}
+
+    static boolean enabled() {
+        return Boolean.parseBoolean(System.getProperty("caramel.logging.async.lanes", "false"));
+    }
+
+    /** 进入高优先级通道的最低严重程度，数值约定同 {@link AsyncOverflow#severity} */
+    static int prioritySeverity() {
+        return AsyncOverflow.parseSeverity(System.getProperty("caramel.logging.async.lanes.priority-level"), AsyncOverflow.severity(Level.WARN, null));
+    }
+
+    static int priorityCapacity() {
+        return AsyncSystem.parseIntValue(System.getProperty("caramel.logging.async.lanes.priority.capacity"), 8192);
+    }
+
+    /** 高优先级日志是否需要等待同一线程更早提交的日志 */
+    static boolean threadOrdered() {
+        return ORDERING_THREAD.equalsIgnoreCase(System.getProperty("caramel.logging.async.lanes.ordering", ORDERING_NONE).trim());
+    }
+
+}
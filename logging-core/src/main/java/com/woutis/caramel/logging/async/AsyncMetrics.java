@@ -0,0 +1,181 @@
+/*
+ * Copyright 2018-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.woutis.caramel.logging.async;
+
+import com.woutis.caramel.logging.CaramelLogger;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToLongFunction;
+
+/**
+ * Counters and latency histograms of the async pipeline.
+ *
+ * <p>Timing costs a few {@link System#nanoTime()} calls per event and can be turned off with
+ * {@code caramel.logging.async.metrics=false}, the counters are always kept. Exposed through
+ * {@link AsyncSystem#metrics()}, {@link #snapshot()} and, unless {@code caramel.logging.async.jmx=false}, the
+ * {@value #OBJECT_NAME} MBean.
+ *
+ * @author Kweny
+ * @since 0.0.1
+ */
+public class AsyncMetrics implements AsyncMetricsMXBean {
+
+    private static final CaramelLogger logger = CaramelLogger.getLogger(AsyncMetrics.class);
+
+    public static final String OBJECT_NAME = "com.woutis.caramel.logging:type=AsyncSystem";
+
+    private final AsyncSystem system;
+    private final boolean timing;
+
+    private final LongAdder enqueued = new LongAdder();
+    private final LongAdder handled = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LatencyHistogram enqueueLatency = new LatencyHistogram();
+    private final LatencyHistogram queueWaitLatency = new LatencyHistogram();
+    private final LatencyHistogram handlerLatency = new LatencyHistogram();
+
+    AsyncMetrics(AsyncSystem system) {
+        this.system = system;
+        this.timing = Boolean.parseBoolean(System.getProperty("caramel.logging.async.metrics", "true"));
+    }
+
+    void register() {
+        if (!Boolean.parseBoolean(System.getProperty("caramel.logging.async.jmx", "true"))) {
+            return;
+        }
+        try {
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!ManagementFactory.getPlatformMBeanServer().isRegistered(name)) {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+            }
+        } catch (Throwable t) {
+            logger.warn(t, "[Caramel Logging] AsyncMetrics failed to register the MBean.");
+        }
+    }
+
+    /** 是否记录耗时，关闭时 {@link #now()} 返回 0 */
+    boolean timing() {
+        return this.timing;
+    }
+
+    long now() {
+        return this.timing ? System.nanoTime() : 0;
+    }
+
+    void enqueued(long claimedNanos) {
+        this.enqueued.increment();
+        if (this.timing) {
+            this.enqueueLatency.record(System.nanoTime() - claimedNanos);
+        }
+    }
+
+    void handled(long enqueuedNanos, long startNanos) {
+        this.handled.increment();
+        if (this.timing) {
+            this.queueWaitLatency.record(startNanos - enqueuedNanos);
+            this.handlerLatency.record(System.nanoTime() - startNanos);
+        }
+    }
+
+    void failed() {
+        this.failed.increment();
+    }
+
+    public AsyncMetricsSnapshot snapshot() {
+        return new AsyncMetricsSnapshot(this);
+    }
+
+    @Override
+    public String getEngine() {
+        AsyncBackend backend = this.system.backend();
+        return backend != null ? backend.name() : null;
+    }
+
+    @Override
+    public long getQueueDepth() {
+        AsyncBackend backend = this.system.backend();
+        AsyncSpill spill = this.system.spill();
+        return (backend != null ? backend.pending() : 0) + (spill != null ? spill.pending() : 0);
+    }
+
+    @Override
+    public long getEnqueued() {
+        return this.enqueued.sum();
+    }
+
+    @Override
+    public long getHandled() {
+        return this.handled.sum();
+    }
+
+    @Override
+    public long getFailed() {
+        return this.failed.sum();
+    }
+
+    @Override
+    public long getBlocked() {
+        return overflow(AsyncOverflow::blocked);
+    }
+
+    @Override
+    public long getDiscarded() {
+        return overflow(AsyncOverflow::discarded);
+    }
+
+    @Override
+    public long getEvicted() {
+        return overflow(AsyncOverflow::evicted);
+    }
+
+    @Override
+    public long getSynchronous() {
+        AsyncSpill spill = this.system.spill();
+        return overflow(AsyncOverflow::synchronous) + (spill != null ? spill.rejected() : 0);
+    }
+
+    @Override
+    public long getSpilled() {
+        AsyncSpill spill = this.system.spill();
+        return spill != null ? spill.spilled() : 0;
+    }
+
+    @Override
+    public LatencySnapshot getEnqueueLatency() {
+        return this.enqueueLatency.snapshot();
+    }
+
+    @Override
+    public LatencySnapshot getQueueWaitLatency() {
+        return this.queueWaitLatency.snapshot();
+    }
+
+    @Override
+    public LatencySnapshot getHandlerLatency() {
+        return this.handlerLatency.snapshot();
+    }
+
+    /** 合计普通通道与高优先级通道的溢出计数 */
+    private long overflow(ToLongFunction<AsyncOverflow> counter) {
+        AsyncOverflow priority = this.system.priorityOverflow();
+        return counter.applyAsLong(this.system.overflow()) + (priority != null ? counter.applyAsLong(priority) : 0);
+    }
+
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2018-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.woutis.caramel.logging.async;
+
+/**
+ * JMX view of {@link AsyncMetrics}, registered as {@value AsyncMetrics#OBJECT_NAME}.
+ *
+ * @author Kweny
+ * @since 0.0.1
+ */
+public interface AsyncMetricsMXBean {
+
+    String getEngine();
+
+    /** 已提交但尚未处理完毕的日志数量 */
+    long getQueueDepth();
+
+    long getEnqueued();
+
+    long getHandled();
+
+    long getFailed();
+
+    long getBlocked();
+
+    long getDiscarded();
+
+    long getEvicted();
+
+    long getSynchronous();
+
+    /** 写入溢出文件的日志数量，参见 {@link AsyncSpill} */
+    long getSpilled();
+
+    /** 调用线程上从申请投递对象到提交完毕的耗时 */
+    LatencySnapshot getEnqueueLatency();
+
+    /** 日志提交后等待消费者处理的耗时 */
+    LatencySnapshot getQueueWaitLatency();
+
+    /** 消费者输出单条日志的耗时 */
+    LatencySnapshot getHandlerLatency();
+
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2018-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.woutis.caramel.logging.async;
+
+/**
+ * Point-in-time copy of the {@link AsyncMetrics}, see {@link AsyncMetrics#snapshot()}.
+ *
+ * @author Kweny
+ * @since 0.0.1
+ */
+public class AsyncMetricsSnapshot {
+
+    private final String engine;
+    private final long queueDepth;
+    private final long enqueued;
+    private final long handled;
+    private final long failed;
+    private final long blocked;
+    private final long discarded;
+    private final long evicted;
+    private final long synchronous;
+    private final long spilled;
+    private final LatencySnapshot enqueueLatency;
+    private final LatencySnapshot queueWaitLatency;
+    private final LatencySnapshot handlerLatency;
+
+    AsyncMetricsSnapshot(AsyncMetricsMXBean metrics) {
+        this.engine = metrics.getEngine();
+        this.queueDepth = metrics.getQueueDepth();
+        this.enqueued = metrics.getEnqueued();
+        this.handled = metrics.getHandled();
+        this.failed = metrics.getFailed();
+        this.blocked = metrics.getBlocked();
+        this.discarded = metrics.getDiscarded();
+        this.evicted = metrics.getEvicted();
+        this.synchronous = metrics.getSynchronous();
+        this.spilled = metrics.getSpilled();
+        this.enqueueLatency = metrics.getEnqueueLatency();
+        this.queueWaitLatency = metrics.getQueueWaitLatency();
+        this.handlerLatency = metrics.getHandlerLatency();
+    }
+
+    public String engine() {
+        return this.engine;
+    }
+
+    public long queueDepth() {
+        return this.queueDepth;
+    }
+
+    public long enqueued() {
+        return this.enqueued;
+    }
+
+    public long handled() {
+        return this.handled;
+    }
+
+    public long failed() {
+        return this.failed;
+    }
+
+    public long blocked() {
+        return this.blocked;
+    }
+
+    public long discarded() {
+        return this.discarded;
+    }
+
+    public long evicted() {
+        return this.evicted;
+    }
+
+    public long synchronous() {
+        return this.synchronous;
+    }
+
+    public long spilled() {
+        return this.spilled;
+    }
+
+    public LatencySnapshot enqueueLatency() {
+        return this.enqueueLatency;
+    }
+
+    public LatencySnapshot queueWaitLatency() {
+        return this.queueWaitLatency;
+    }
+
+    public LatencySnapshot handlerLatency() {
+        return this.handlerLatency;
+    }
+
+    @Override
+    public String toString() {
+        return "engine=" + this.engine + ", queueDepth=" + this.queueDepth + ", enqueued=" + this.enqueued
+                + ", handled=" + this.handled + ", failed=" + this.failed + ", blocked=" + this.blocked
+                + ", discarded=" + this.discarded + ", evicted=" + this.evicted + ", synchronous=" + this.synchronous + ", spilled=" + this.spilled
+                + ", enqueueLatency={" + this.enqueueLatency + "}, queueWaitLatency={" + this.queueWaitLatency
+                + "}, handlerLatency={" + this.handlerLatency + "}";
+    }
+
+}
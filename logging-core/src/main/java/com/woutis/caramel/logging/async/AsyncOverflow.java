@@ -0,0 +1,226 @@
+/*
+ * Copyright 2018-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.woutis.caramel.logging.async;
+
+import com.woutis.caramel.logging.level.CaramelLevel;
+import com.woutis.caramel.logging.level.CustomLevel;
+import org.slf4j.event.Level;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Applies the configured {@link OverflowPolicy} when an {@link AsyncBackend} is at capacity, and counts what was
+ * blocked, discarded, evicted or diverted to synchronous logging.
+ *
+ * <p>Configured with the following system properties:
+ * <ul>
+ *     <li>{@code caramel.logging.async.overflow.policy}: {@code block} (default), {@code discard}, {@code drop_oldest},
+ *     {@code synchronous} or {@code spill}</li>
+ *     <li>{@code caramel.logging.async.overflow.block-timeout}: milliseconds to wait for a free slot, defaults to
+ *     {@code 1000}; {@code 0} waits indefinitely</li>
+ *     <li>{@code caramel.logging.async.overflow.discard-level}: events at this level or less severe are discarded by
+ *     {@link OverflowPolicy#DISCARD}, defaults to {@code INFO}</li>
+ * </ul>
+ *
+ * <p>Threads that are writing async events themselves (consumers, or appenders and layouts logging from them) never
+ * wait for a free slot, since only they could free it; their events are logged synchronously instead.
+ *
+ * <p>The priority lane of {@link AsyncLanes} has its own instance, configured by the same properties under
+ * {@code caramel.logging.async.lanes.priority.overflow.*}.
+ *
+ * @author Kweny
+ * @since 0.0.1
+ */
+public class AsyncOverflow {
+
+    private static final int SPIN_TRIES = 100;
+    private static final long PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+    private static final int DEFAULT_BLOCK_TIMEOUT_MILLIS = 1000;
+
+    static final String PREFIX = "caramel.logging.async.overflow";
+    static final String PRIORITY_PREFIX = "caramel.logging.async.lanes.priority.overflow";
+
+    private final boolean priority;
+    private final OverflowPolicy policy;
+    private final long blockTimeoutNanos;
+    private final int discardSeverity;
+
+    private final LongAdder blocked = new LongAdder();
+    private final LongAdder discarded = new LongAdder();
+    private final LongAdder evicted = new LongAdder();
+    private final LongAdder synchronous = new LongAdder();
+
+    AsyncOverflow() {
+        this(false, PREFIX);
+    }
+
+    /**
+     * @param priority 是否用于高优先级通道，决定向引擎申请哪个通道的容量
+     * @param prefix 配置项前缀，未配置的项使用 {@value #PREFIX} 下的值
+     */
+    AsyncOverflow(boolean priority, String prefix) {
+        this.priority = priority;
+        this.policy = parsePolicy(property(prefix, "policy"));
+        this.blockTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(AsyncSystem.parseIntValue(property(prefix, "block-timeout"), DEFAULT_BLOCK_TIMEOUT_MILLIS));
+        this.discardSeverity = parseSeverity(property(prefix, "discard-level"), severity(Level.INFO, null));
+    }
+
+    private static String property(String prefix, String name) {
+        return System.getProperty(prefix + "." + name, System.getProperty(PREFIX + "." + name));
+    }
+
+    public OverflowPolicy policy() {
+        return this.policy;
+    }
+
+    /** 因队列已满而在调用线程上等待的次数 */
+    public long blocked() {
+        return this.blocked.sum();
+    }
+
+    /** 因队列已满而被丢弃的新日志数量（包括等待超时） */
+    public long discarded() {
+        return this.discarded.sum();
+    }
+
+    /** 为新日志腾出空位而被丢弃的旧日志数量 */
+    public long evicted() {
+        return this.evicted.sum();
+    }
+
+    /** 改为在调用线程上同步输出的日志数量 */
+    public long synchronous() {
+        return this.synchronous.sum();
+    }
+
+    /**
+     * 在引擎已满时按策略获取投递对象
+     *
+     * @return 可填充的投递对象，日志被丢弃时返回 {@code null}
+     */
+    AsyncDelivery overflow(AsyncBackend backend, Level level, CustomLevel customLevel) {
+        switch (this.policy) {
+            case DISCARD:
+                if (severity(level, customLevel) >= this.discardSeverity) {
+                    this.discarded.increment();
+                    return null;
+                }
+                return block(backend);
+            case DROP_OLDEST:
+                return dropOldest(backend);
+            case SYNCHRONOUS:
+                this.synchronous.increment();
+                return AsyncDelivery.create().synchronous(true);
+            case SPILL:
+                return AsyncDelivery.create().spilled(true);
+            case BLOCK:
+            default:
+                return block(backend);
+        }
+    }
+
+    private AsyncDelivery block(AsyncBackend backend) {
+        if (AsyncHandler.handling()) {
+            // 正在输出异步日志的线程等待空位会与自己死锁，改为同步输出
+            this.synchronous.increment();
+            return AsyncDelivery.create().synchronous(true);
+        }
+        this.blocked.increment();
+        long deadline = System.nanoTime() + this.blockTimeoutNanos;
+        int counter = 0;
+        AsyncDelivery delivery;
+        while ((delivery = backend.claim(this.priority)) == null) {
+            if (this.blockTimeoutNanos > 0 && System.nanoTime() - deadline >= 0) {
+                this.discarded.increment();
+                return null;
+            }
+            if (counter < SPIN_TRIES) {
+                counter++;
+                Thread.yield();
+            } else {
+                LockSupport.parkNanos(PARK_NANOS);
+            }
+        }
+        return delivery;
+    }
+
+    private AsyncDelivery dropOldest(AsyncBackend backend) {
+        AsyncDelivery delivery;
+        while ((delivery = backend.claim(this.priority)) == null) {
+            if (!backend.evictOldest(this.priority)) {
+                this.discarded.increment();
+                return null;
+            }
+            this.evicted.increment();
+        }
+        return delivery;
+    }
+
+    /**
+     * 按 Log4j 的数值约定返回严重程度，数值越大越不严重
+     */
+    static int severity(Level level, CustomLevel customLevel) {
+        if (customLevel != null) {
+            return customLevel.value();
+        }
+        switch (level) {
+            case ERROR:
+                return 200;
+            case WARN:
+                return 300;
+            case INFO:
+                return 400;
+            case DEBUG:
+                return 500;
+            case TRACE:
+            default:
+                return 600;
+        }
+    }
+
+    /**
+     * 解析级别名称（{@link CaramelLevel}，数值间隔 50，参见 {@link CustomLevel}）或数值
+     */
+    static int parseSeverity(String value, int defaultValue) {
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException ignored) {}
+        try {
+            CaramelLevel level = CaramelLevel.valueOf(value.trim().toUpperCase());
+            return level == CaramelLevel.ALL ? Integer.MAX_VALUE : level.ordinal() * 50;
+        } catch (IllegalArgumentException e) {
+            return defaultValue;
+        }
+    }
+
+    static OverflowPolicy parsePolicy(String value) {
+        if (value != null) {
+            for (OverflowPolicy candidate : OverflowPolicy.values()) {
+                if (candidate.name().replace("_", "").equalsIgnoreCase(value.trim().replace("-", "").replace("_", ""))) {
+                    return candidate;
+                }
+            }
+        }
+        return OverflowPolicy.BLOCK;
+    }
+
+}
@@ -0,0 +1,273 @@
+/*
+ * Copyright 2018-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.woutis.caramel.logging.async;
+
+import com.woutis.caramel.logging.CaramelLogger;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Preallocated multi-producer single-consumer ring of reusable {@link AsyncDelivery} slots.
+ *
+ * <p>Producers {@link #tryClaim()} a slot, fill it in place and {@link #publish(AsyncDelivery)} it. A single consumer
+ * thread hands published slots to {@link AsyncHandler} in sequence order and clears them for reuse, so the steady
+ * state allocates no delivery objects and no queue nodes.
+ *
+ * @author Kweny
+ * @since 0.0.1
+ */
+public class AsyncRingBuffer {
+
+    private static final CaramelLogger logger = CaramelLogger.getLogger(AsyncRingBuffer.class);
+
+    private static final int SPIN_TRIES = 100;
+    private static final int YIELD_TRIES = 100;
+    private static final long PARK_NANOS = 100_000L;
+    private static final long BLOCKING_PARK_NANOS = 10_000_000L; // 阻塞策略的兜底唤醒间隔
+
+    private final int capacity;
+    private final int mask;
+    private final AsyncDelivery[] slots;
+    private final AtomicLongArray published;
+    private final AtomicLong claimed = new AtomicLong(-1);
+    private final AtomicLong consumed = new AtomicLong(-1);
+
+    private final AsyncDelivery[] batch;
+    private final WaitStrategy waitStrategy;
+    private final long parkNanos;
+
+    private volatile boolean running;
+    private volatile boolean waiting;
+    private volatile Thread consumer;
+
+    public AsyncRingBuffer(int size) {
+        this(size, 1);
+    }
+
+    /**
+     * @param size 槽位数量，向上取整为 2 的幂
+     * @param batchSize 消费者每次批量输出的最大日志数量，为 1 时逐条输出
+     */
+    public AsyncRingBuffer(int size, int batchSize) {
+        this(size, batchSize, WaitStrategy.BACKOFF);
+    }
+
+    /**
+     * @param size 槽位数量，向上取整为 2 的幂
+     * @param batchSize 消费者每次批量输出的最大日志数量，为 1 时逐条输出
+     * @param waitStrategy 消费者空闲时的等待策略
+     */
+    public AsyncRingBuffer(int size, int batchSize, WaitStrategy waitStrategy) {
+        this(size, batchSize, waitStrategy, PARK_NANOS);
+    }
+
+    /**
+     * @param size 槽位数量，向上取整为 2 的幂
+     * @param batchSize 消费者每次批量输出的最大日志数量，为 1 时逐条输出
+     * @param waitStrategy 消费者空闲时的等待策略
+     * @param parkNanos {@link WaitStrategy#PARK} 与 {@link WaitStrategy#BACKOFF} 每次休眠的纳秒数
+     */
+    public AsyncRingBuffer(int size, int batchSize, WaitStrategy waitStrategy, long parkNanos) {
+        this.waitStrategy = waitStrategy;
+        this.parkNanos = Math.max(1, parkNanos);
+        this.batch = batchSize > 1 ? new AsyncDelivery[batchSize] : null;
+        this.capacity = ceilingPowerOfTwo(size);
+        this.mask = this.capacity - 1;
+        this.slots = new AsyncDelivery[this.capacity];
+        this.published = new AtomicLongArray(this.capacity);
+        for (int i = 0; i < this.capacity; i++) {
+            this.slots[i] = AsyncDelivery.create();
+            this.published.set(i, -1);
+        }
+    }
+
+    public synchronized void start(String threadName) {
+        if (this.running) {
+            return;
+        }
+        this.running = true;
+        this.consumer = new Thread(this::consume, threadName);
+        this.consumer.setDaemon(true);
+        this.consumer.start();
+    }
+
+    public synchronized void stop() {
+        this.running = false;
+        if (this.consumer != null) {
+            LockSupport.unpark(this.consumer);
+        }
+    }
+
+    public int capacity() {
+        return this.capacity;
+    }
+
+    public WaitStrategy waitStrategy() {
+        return this.waitStrategy;
+    }
+
+    /** 消费者线程，尚未启动时返回 {@code null} */
+    Thread consumerThread() {
+        return this.consumer;
+    }
+
+    /** 最后一个已申请的序号 */
+    public long claimedSequence() {
+        return this.claimed.get();
+    }
+
+    /** 最后一个已处理完毕的序号 */
+    public long consumedSequence() {
+        return this.consumed.get();
+    }
+
+    /**
+     * 申请下一个槽位，缓冲区已满时返回 {@code null}
+     */
+    public AsyncDelivery tryClaim() {
+        long current;
+        long next;
+        do {
+            current = this.claimed.get();
+            next = current + 1;
+            if (next - this.capacity > this.consumed.get()) {
+                return null;
+            }
+        } while (!this.claimed.compareAndSet(current, next));
+        AsyncDelivery slot = this.slots[(int) (next & this.mask)];
+        slot.sequence = next;
+        return slot;
+    }
+
+    /**
+     * 发布已填充的槽位，使其对消费者可见
+     */
+    public void publish(AsyncDelivery delivery) {
+        long sequence = delivery.sequence;
+        if (this.waitStrategy == WaitStrategy.BLOCKING) {
+            // volatile 写后再读 waiting，与消费者先写 waiting 再读序号配对，避免漏掉唤醒
+            this.published.set((int) (sequence & this.mask), sequence);
+            if (this.waiting) {
+                LockSupport.unpark(this.consumer);
+            }
+        } else {
+            this.published.lazySet((int) (sequence & this.mask), sequence);
+        }
+    }
+
+    private void consume() {
+        long next = this.consumed.get() + 1;
+        int counter = 0;
+        while (this.running) {
+            int index = (int) (next & this.mask);
+            if (this.published.get(index) == next) {
+                next = this.batch == null ? consumeOne(next, index) : consumeBatch(next);
+                counter = 0;
+            } else {
+                counter = idle(counter, index, next);
+            }
+        }
+    }
+
+    private long consumeOne(long sequence, int index) {
+        AsyncDelivery delivery = this.slots[index];
+        try {
+            AsyncHandler.handle(delivery);
+        } catch (Throwable t) {
+            logger.error(t, "[Caramel Logging] AsyncRingBuffer failed to handle delivery.");
+        } finally {
+            delivery.clear();
+            this.consumed.lazySet(sequence);
+        }
+        return sequence + 1;
+    }
+
+    /** 收集从 {@code sequence} 开始连续发布的槽位，作为一批输出 */
+    private long consumeBatch(long sequence) {
+        int size = 0;
+        while (size < this.batch.length) {
+            int index = (int) ((sequence + size) & this.mask);
+            if (this.published.get(index) != sequence + size) {
+                break;
+            }
+            this.batch[size++] = this.slots[index];
+        }
+        try {
+            AsyncHandler.handleBatch(this.batch, size);
+        } catch (Throwable t) {
+            logger.error(t, "[Caramel Logging] AsyncRingBuffer failed to handle batch.");
+        } finally {
+            for (int i = 0; i < size; i++) {
+                this.batch[i].clear();
+                this.batch[i] = null;
+            }
+            this.consumed.lazySet(sequence + size - 1);
+        }
+        return sequence + size;
+    }
+
+    /**
+     * 按 {@link WaitStrategy} 等待序号 {@code next} 被发布
+     *
+     * @param counter 连续空闲的次数
+     * @return 新的连续空闲次数
+     */
+    private int idle(int counter, int index, long next) {
+        switch (this.waitStrategy) {
+            case BUSY_SPIN:
+                return counter;
+            case YIELD:
+                if (counter < SPIN_TRIES) {
+                    return counter + 1;
+                }
+                Thread.yield();
+                return counter;
+            case PARK:
+                LockSupport.parkNanos(this.parkNanos);
+                return counter;
+            case BLOCKING:
+                this.waiting = true;
+                if (this.published.get(index) != next && this.running) {
+                    LockSupport.parkNanos(BLOCKING_PARK_NANOS);
+                }
+                this.waiting = false;
+                return counter;
+            case BACKOFF:
+            default:
+                if (counter < SPIN_TRIES) {
+                    return counter + 1;
+                }
+                if (counter < SPIN_TRIES + YIELD_TRIES) {
+                    Thread.yield();
+                    return counter + 1;
+                }
+                LockSupport.parkNanos(this.parkNanos);
+                return counter;
+        }
+    }
+
+    private static int ceilingPowerOfTwo(int size) {
+        if (size <= 1) {
+            return 2;
+        }
+        int highest = Integer.highestOneBit(size);
+        return highest == size ? size : highest << 1;
+    }
+
+}
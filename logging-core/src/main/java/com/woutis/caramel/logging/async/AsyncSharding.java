@@ -0,0 +1,69 @@
+/*
+ * Copyright 2018-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.woutis.caramel.logging.async;
+
+/**
+ * Shard selection for engines running several consumers.
+ *
+ * <p>{@code caramel.logging.async.shards} sets the number of consumers (default {@code 1}) and
+ * {@code caramel.logging.async.shard-by} chooses the key: {@code thread} (default) keeps every producer thread on one
+ * shard, so its events stay in order; {@code logger} keeps every logger on one shard, so only the events of the same
+ * logger stay in order.
+ *
+ * @author Kweny
+ * @since 0.0.1
+ */
+final class AsyncSharding {
+
+    static final String BY_THREAD = "thread";
+    static final String BY_LOGGER = "logger";
+
+    private AsyncSharding() {}
+
+    static int shards() {
+        return Math.max(1, AsyncSystem.parseIntValue(System.getProperty("caramel.logging.async.shards"), 1));
+    }
+
+    static boolean byLogger() {
+        return BY_LOGGER.equalsIgnoreCase(System.getProperty("caramel.logging.async.shard-by", BY_THREAD).trim());
+    }
+
+    /** 当前生产者线程对应的分片 */
+    static int ofCurrentThread(int shards) {
+        return ofThread(Thread.currentThread().getId(), shards);
+    }
+
+    /** 指定生产者线程对应的分片，{@code threadId} 为负数时取当前线程 */
+    static int ofThread(long threadId, int shards) {
+        if (shards == 1) {
+            return 0;
+        }
+        return index(threadId < 0 ? Thread.currentThread().getId() : threadId, shards);
+    }
+
+    /** 日志所属 logger 对应的分片 */
+    static int ofLogger(AsyncDelivery delivery, int shards) {
+        return shards == 1 || delivery.logger() == null ? 0 : index(delivery.logger().getName().hashCode(), shards);
+    }
+
+    private static int index(long key, int shards) {
+        long mixed = key * 0x9E3779B97F4A7C15L;
+        return (int) ((mixed ^ (mixed >>> 32)) & Integer.MAX_VALUE) % shards;
+    }
+
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2018-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.woutis.caramel.logging.async;
+
+import java.time.Duration;
+
+/**
+ * Drains the {@link AsyncSystem} when the JVM exits.
+ *
+ * <p>Controlled by {@code caramel.logging.async.shutdown-hook} (default {@code true}) and
+ * {@code caramel.logging.async.shutdown-timeout} (milliseconds, default {@code 5000}). Logging frameworks that stop
+ * their appenders in their own shutdown hook should call {@link #drain()} first, see
+ * {@code com.woutis.caramel.logging.log4j.shutdown.Log4jShutdownCallbackRegistry}; {@link #drain()} works whether or
+ * not the JVM shutdown hook is enabled.
+ *
+ * @author Kweny
+ * @since 0.0.1
+ */
+public final class AsyncShutdown {
+
+    private static volatile AsyncSystem system;
+
+    private AsyncShutdown() {}
+
+    /** 是否注册 JVM 关闭钩子，不影响 {@link #drain()} */
+    public static boolean enabled() {
+        return Boolean.parseBoolean(System.getProperty("caramel.logging.async.shutdown-hook", "true"));
+    }
+
+    /** 关闭时等待日志处理完毕的最长时间 */
+    public static Duration timeout() {
+        return Duration.ofMillis(AsyncSystem.parseIntValue(System.getProperty("caramel.logging.async.shutdown-timeout"), 5000));
+    }
+
+    static void install(AsyncSystem asyncSystem) {
+        system = asyncSystem;
+        if (!enabled()) {
+            return;
+        }
+        Thread hook = new Thread(AsyncShutdown::drain);
+        hook.setName("caramel-async-logging-shutdown");
+        Runtime.getRuntime().addShutdownHook(hook);
+    }
+
+    /**
+     * 停止 {@link AsyncSystem} 并等待已提交的日志处理完毕，可重复调用；{@link AsyncSystem} 尚未初始化时不做任何事
+     *
+     * @return 超时后仍未处理的日志数量
+     */
+    public static long drain() {
+        AsyncSystem current = system;
+        if (current == null) {
+            return 0;
+        }
+        return current.shutdown(timeout());
+    }
+
+}
@@ -0,0 +1,680 @@
+/*
+ * Copyright 2018-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.woutis.caramel.logging.async;
+
+import com.woutis.caramel.logging.CaramelLogger;
+import com.woutis.caramel.logging.ContextMap;
+import com.woutis.caramel.logging.ThreadSnapshot;
+import com.woutis.caramel.logging.level.CustomLevel;
+import com.woutis.caramel.logging.message.CaramelMessageFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MarkerFactory;
+import org.slf4j.event.Level;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Memory-mapped spill file used by {@link OverflowPolicy#SPILL}.
+ *
+ * <p>When the backend is at capacity, events are serialized into a fixed-size file mapped into memory instead of being
+ * kept on the heap, and a background thread replays them into the backend as soon as it has capacity again. While the
+ * file holds events, new events are spilled as well, and replayed events go to the shard of the thread that logged
+ * them (see {@link AsyncSharding}), so the events of a producer thread stay in order. The file is a ring of
+ * length-prefixed records whose read and write positions are kept in its header, so events still spilled when the JVM
+ * stops, for example because the consumer stalled past the shutdown timeout, are replayed by the next start.
+ *
+ * <p>Configured with the following system properties:
+ * <ul>
+ *     <li>{@code caramel.logging.async.spill.file}: path of the spill file. Defaults to
+ *     {@code caramel-async-logging-<application>-<hash>.spill} in {@code java.io.tmpdir}. The name is derived from the
+ *     launch command (main class or jar) and the working directory, so only a restart of the same application replays
+ *     it. When the file is locked by another JVM a temporary file is used instead</li>
+ *     <li>{@code caramel.logging.async.spill.size}: size of the file in megabytes, defaults to {@code 64}</li>
+ * </ul>
+ *
+ * <p>Events are spilled in a reduced form: arguments are rendered into the message, context values are kept as
+ * strings, markers by name, custom levels by name and value, and exceptions as {@link SpilledThrowable}. When the file
+ * is full the event is written on the caller thread instead.
+ *
+ * @author Kweny
+ * @since 0.0.1
+ */
+public class AsyncSpill {
+
+    private static final CaramelLogger logger = CaramelLogger.getLogger(AsyncSpill.class);
+
+    private static final String FILE_PREFIX = "caramel-async-logging-";
+    private static final String FILE_SUFFIX = ".spill";
+
+    private static final int MAGIC = 0x43534C32;
+    private static final int MAGIC_OFFSET = 0;
+    private static final int READ_OFFSET = 4;
+    private static final int WRITE_OFFSET = 8;
+    private static final int COUNT_OFFSET = 12;
+    private static final int HEADER = 16;
+    /** 文件末尾剩余空间不足时写入的环绕标记，读取方遇到后回到文件开头 */
+    private static final int WRAP = -1;
+    private static final int MAX_CAUSES = 8;
+    private static final long PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final File file;
+    private final FileChannel channel;
+    private final FileLock lock;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+
+    /** 保护读写位置、记录数与编码缓冲区 */
+    private final Object monitor = new Object();
+    private final ByteBuffer writer;
+    private ByteBuffer scratch = ByteBuffer.allocate(4096);
+    private int read;
+    private int write;
+    private int count;
+
+    private volatile boolean active;
+    private volatile boolean closed;
+    private Thread replayThread;
+
+    private final LongAdder spilled = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    /**
+     * 按系统属性打开溢出文件，指定的文件被其它进程占用时改用临时文件
+     *
+     * @return 溢出文件，无法打开时返回 {@code null}
+     */
+    static AsyncSpill open() {
+        String location = System.getProperty("caramel.logging.async.spill.file");
+        File file = location != null && !location.trim().isEmpty()
+                ? new File(location.trim())
+                : new File(System.getProperty("java.io.tmpdir"), defaultName(System.getProperty("sun.java.command"), System.getProperty("user.dir")));
+        int size = Math.min(1024, Math.max(1, AsyncSystem.parseIntValue(System.getProperty("caramel.logging.async.spill.size"), 64))) * 1024 * 1024;
+        try {
+            try {
+                return new AsyncSpill(file, size);
+            } catch (OverlappingFileLockException e) {
+                // 同一 JVM 中已打开该文件
+            }
+            File temporary = File.createTempFile(FILE_PREFIX, FILE_SUFFIX);
+            temporary.deleteOnExit();
+            logger.warn("[Caramel Logging] AsyncSpill file '{}' is in use, spilling to '{}' instead.", file, temporary);
+            return new AsyncSpill(temporary, size);
+        } catch (Exception e) {
+            logger.error(e, "[Caramel Logging] AsyncSpill file '{}' failed to open, spilled events are written synchronously.", file);
+            return null;
+        }
+    }
+
+    /**
+     * 默认的溢出文件名，由启动命令中的主类（或 jar）与工作目录区分不同的应用，避免回放同一主机上其它应用遗留的日志
+     */
+    static String defaultName(String command, String directory) {
+        String main = command != null ? command.trim().split("\\s+", 2)[0] : "";
+        String application = new File(main).getName();
+        if (application.endsWith(".jar")) {
+            application = application.substring(0, application.length() - 4);
+        } else {
+            application = application.substring(application.lastIndexOf('.') + 1);
+        }
+        application = application.replaceAll("[^A-Za-z0-9_-]", "");
+        String identity = main + '|' + (directory != null ? directory : "");
+        return FILE_PREFIX + (application.isEmpty() ? "" : application + '-') + Integer.toHexString(identity.hashCode()) + FILE_SUFFIX;
+    }
+
+    AsyncSpill(File file, int size) throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Cannot create directory " + parent);
+        }
+        FileChannel channel = new RandomAccessFile(file, "rw").getChannel();
+        FileLock lock;
+        try {
+            lock = channel.tryLock();
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        if (lock == null) {
+            channel.close();
+            throw new OverlappingFileLockException();
+        }
+        boolean existing = channel.size() == size;
+        this.file = file;
+        this.channel = channel;
+        this.lock = lock;
+        this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        this.capacity = size;
+        this.writer = this.buffer.duplicate();
+        if (existing && recover()) {
+            logger.info("[Caramel Logging] AsyncSpill recovered {} events from '{}'.", this.count, file);
+        } else {
+            reset();
+            this.buffer.putInt(MAGIC_OFFSET, MAGIC);
+        }
+        this.active = this.count > 0;
+    }
+
+    /** 读取上次运行遗留的读写位置，文件头无效时返回 {@code false} */
+    private boolean recover() {
+        int read = this.buffer.getInt(READ_OFFSET);
+        int write = this.buffer.getInt(WRITE_OFFSET);
+        int count = this.buffer.getInt(COUNT_OFFSET);
+        if (this.buffer.getInt(MAGIC_OFFSET) != MAGIC || read < HEADER || read > this.capacity
+                || write < HEADER || write > this.capacity || count < 0 || (count == 0) != (read == write)) {
+            return false;
+        }
+        this.read = read;
+        this.write = write;
+        this.count = count;
+        return true;
+    }
+
+    private void reset() {
+        this.read = HEADER;
+        this.write = HEADER;
+        this.count = 0;
+        this.buffer.putInt(READ_OFFSET, this.read);
+        this.buffer.putInt(WRITE_OFFSET, this.write);
+        this.buffer.putInt(COUNT_OFFSET, this.count);
+    }
+
+    /**
+     * 启动回放线程，将溢出的日志按写入顺序重新提交给 {@code system} 当前的引擎
+     */
+    void start(AsyncSystem system) {
+        start(system::backend, () -> system.metrics().now());
+    }
+
+    /**
+     * 启动回放线程，将溢出的日志按写入顺序重新提交给 {@code backend} 提供的引擎，{@code clock} 提供入队时间
+     */
+    void start(Supplier<AsyncBackend> backend, LongSupplier clock) {
+        Thread thread = new Thread(() -> replay(backend, clock));
+        thread.setName("caramel-async-logging-spill");
+        thread.setDaemon(true);
+        this.replayThread = thread;
+        thread.start();
+    }
+
+    /** 文件中是否有尚未回放的日志，此时新日志也写入文件以保持顺序 */
+    boolean active() {
+        return this.active;
+    }
+
+    /**
+     * 将填充完毕的投递对象写入文件，由 {@link AsyncSystem#publish(AsyncDelivery)} 在调用线程上调用
+     *
+     * @return 是否写入成功，文件已满或已关闭时返回 {@code false}
+     */
+    boolean append(AsyncDelivery delivery) {
+        Throwable thrown = delivery.thrown();
+        String message = delivery.message();
+        Object[] arguments = delivery.arguments();
+        if (arguments != null && arguments.length > 0) {
+            if (thrown == null && arguments[arguments.length - 1] instanceof Throwable) {
+                thrown = (Throwable) arguments[arguments.length - 1];
+                arguments = Arrays.copyOf(arguments, arguments.length - 1);
+            }
+            message = arguments.length > 0 ? CaramelMessageFactory.render(message, arguments) : message;
+        }
+        synchronized (this.monitor) {
+            if (this.closed) {
+                this.rejected.increment();
+                return false;
+            }
+            ByteBuffer record = encode(delivery, message, thrown);
+            int length = record != null ? record.remaining() : 0;
+            int position = record != null ? reserve(4 + length) : -1;
+            if (position < 0) {
+                this.rejected.increment();
+                return false;
+            }
+            this.buffer.putInt(position, length);
+            this.writer.position(position + 4);
+            this.writer.put(record);
+            this.write = position + 4 + length;
+            this.count++;
+            this.buffer.putInt(WRITE_OFFSET, this.write);
+            this.buffer.putInt(COUNT_OFFSET, this.count);
+            this.spilled.increment();
+            if (!this.active) {
+                this.active = true;
+                this.monitor.notifyAll();
+            }
+            return true;
+        }
+    }
+
+    /**
+     * 为一条记录预留空间，文件末尾不足时写入环绕标记并从文件开头写入；写入位置不会追上读取位置
+     *
+     * @return 记录的起始位置，空间不足时返回 {@code -1}
+     */
+    private int reserve(int need) {
+        if (this.count == 0) {
+            reset();
+        }
+        if (this.write >= this.read) {
+            if (this.capacity - this.write >= need) {
+                return this.write;
+            }
+            if (this.read - HEADER > need) {
+                if (this.capacity - this.write >= 4) {
+                    this.buffer.putInt(this.write, WRAP);
+                }
+                return HEADER;
+            }
+            return -1;
+        }
+        return this.read - this.write > need ? this.write : -1;
+    }
+
+    private void replay(Supplier<AsyncBackend> backends, LongSupplier clock) {
+        while (!this.closed) {
+            int position;
+            int length;
+            boolean priority;
+            long sourceThread;
+            synchronized (this.monitor) {
+                while (this.count == 0 && !this.closed) {
+                    this.active = false;
+                    try {
+                        this.monitor.wait(100);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (this.closed) {
+                    return;
+                }
+                position = this.read;
+                if (this.capacity - position < 4 || this.buffer.getInt(position) == WRAP) {
+                    position = HEADER;
+                }
+                length = this.buffer.getInt(position);
+                priority = length > 0 && this.buffer.get(position + 4) != 0;
+                // 记录以优先级与原线程 id 开头，申请容量时按原线程选择分片
+                sourceThread = length >= 9 ? this.buffer.getLong(position + 5) : -1;
+            }
+            AsyncBackend backend = backends.get();
+            AsyncDelivery delivery;
+            while ((delivery = backend.claim(priority, sourceThread)) == null) {
+                if (this.closed) {
+                    return;
+                }
+                LockSupport.parkNanos(PARK_NANOS);
+            }
+            boolean corrupted = false;
+            try {
+                // 记录位于读取位置之后，写入方不会覆盖，解码无需持有锁
+                decode(position + 4, length, delivery);
+            } catch (Throwable t) {
+                // 已占用的容量必须提交，改为投递一条说明文件损坏的日志
+                corrupted = true;
+                delivery.clear()
+                        .logger(LoggerFactory.getLogger(AsyncSpill.class))
+                        .level(Level.ERROR)
+                        .message("[Caramel Logging] AsyncSpill file '" + this.file + "' is corrupted, the remaining spilled events are dropped.")
+                        .thrown(t);
+            }
+            delivery.priority = priority;
+            delivery.timestamp = clock.getAsLong();
+            backend.submit(delivery);
+            synchronized (this.monitor) {
+                if (corrupted) {
+                    reset();
+                } else {
+                    this.read = position + 4 + length;
+                    this.count--;
+                    this.buffer.putInt(READ_OFFSET, this.read);
+                    this.buffer.putInt(COUNT_OFFSET, this.count);
+                }
+                if (this.count == 0) {
+                    this.active = false;
+                }
+            }
+        }
+    }
+
+    /**
+     * 等待文件中的日志全部回放给引擎
+     *
+     * @return 是否在超时前回放完毕
+     */
+    boolean await(Duration timeout) {
+        return AsyncSystem.awaitUntil(() -> pending() == 0, timeout);
+    }
+
+    /**
+     * 停止回放并将文件内容写回磁盘，尚未回放的日志留在文件中，由下次启动时回放
+     */
+    void close() {
+        synchronized (this.monitor) {
+            if (this.closed) {
+                return;
+            }
+            this.closed = true;
+            this.monitor.notifyAll();
+        }
+        Thread thread = this.replayThread;
+        if (thread != null) {
+            try {
+                thread.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        int remaining = pending();
+        try {
+            this.buffer.force();
+            this.lock.release();
+            this.channel.close();
+        } catch (Exception e) {
+            logger.warn(e, "[Caramel Logging] AsyncSpill file '{}' failed to close.", this.file);
+        }
+        if (remaining > 0) {
+            logger.warn("[Caramel Logging] {} spilled events are kept in '{}' and will be replayed on the next start.", remaining, this.file);
+        }
+    }
+
+    public File file() {
+        return this.file;
+    }
+
+    /** 已写入文件但尚未回放的日志数量 */
+    public int pending() {
+        synchronized (this.monitor) {
+            return this.count;
+        }
+    }
+
+    /** 写入文件的日志数量 */
+    public long spilled() {
+        return this.spilled.sum();
+    }
+
+    /** 因文件已满而改为在调用线程上同步输出的日志数量 */
+    public long rejected() {
+        return this.rejected.sum();
+    }
+
+    // ----- codec ----- beginning
+    /**
+     * 将日志编码到复用的缓冲区，缓冲区不足时加倍后重试
+     *
+     * @return 编码结果，超过文件容量时返回 {@code null}
+     */
+    private ByteBuffer encode(AsyncDelivery delivery, String message, Throwable thrown) {
+        while (true) {
+            ByteBuffer target = this.scratch;
+            target.clear();
+            try {
+                target.put((byte) (delivery.priority ? 1 : 0));
+                target.putLong(delivery.sourceThread() != null ? delivery.sourceThread().id() : -1);
+                if (delivery.customLevel() != null) {
+                    target.put((byte) -1);
+                    putString(target, delivery.customLevel().name());
+                    target.putInt(delivery.customLevel().value());
+                } else {
+                    target.put((byte) delivery.level().ordinal());
+                }
+                putString(target, delivery.logger() != null ? delivery.logger().getName() : null);
+                putString(target, delivery.marker() != null ? delivery.marker().getName() : null);
+                putString(target, message);
+                putThrowable(target, thrown, 0);
+                putContext(target, delivery.context());
+                putFrame(target, delivery.sourceLocation());
+                putFrames(target, delivery.sourceStackTrace());
+                putThread(target, delivery.sourceThread());
+                target.flip();
+                return target;
+            } catch (BufferOverflowException e) {
+                if (target.capacity() >= this.capacity) {
+                    return null;
+                }
+                this.scratch = ByteBuffer.allocate(Math.min(this.capacity, target.capacity() * 2));
+            }
+        }
+    }
+
+    /**
+     * 将记录解码到引擎申请的投递对象中
+     */
+    private void decode(int position, int length, AsyncDelivery delivery) {
+        ByteBuffer source = this.buffer.duplicate();
+        source.limit(position + length);
+        source.position(position);
+        source.get();
+        source.getLong();
+        byte level = source.get();
+        if (level < 0) {
+            delivery.customLevel(new SpilledLevel(getString(source), source.getInt()))
+                    .customLevelHandler(CaramelLogger.levelHandler());
+        } else {
+            delivery.level(Level.values()[level]);
+        }
+        String loggerName = getString(source);
+        String markerName = getString(source);
+        delivery.logger(LoggerFactory.getLogger(loggerName != null ? loggerName : Logger.ROOT_LOGGER_NAME))
+                .marker(markerName != null ? MarkerFactory.getMarker(markerName) : null)
+                .message(getString(source))
+                .thrown(getThrowable(source))
+                .context(getContext(source))
+                .sourceLocation(getFrame(source))
+                .sourceStackTrace(getFrames(source))
+                .sourceThread(getThread(source));
+    }
+
+    private static void putString(ByteBuffer target, String value) {
+        if (value == null) {
+            target.putInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        target.putInt(bytes.length);
+        target.put(bytes);
+    }
+
+    private static String getString(ByteBuffer source) {
+        int length = source.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        source.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void putThrowable(ByteBuffer target, Throwable thrown, int depth) {
+        if (thrown == null || depth > MAX_CAUSES) {
+            target.put((byte) 0);
+            return;
+        }
+        target.put((byte) 1);
+        putString(target, thrown instanceof SpilledThrowable ? ((SpilledThrowable) thrown).className() : thrown.getClass().getName());
+        putString(target, thrown.getLocalizedMessage());
+        putFrames(target, thrown.getStackTrace());
+        putThrowable(target, thrown.getCause() != thrown ? thrown.getCause() : null, depth + 1);
+    }
+
+    private static Throwable getThrowable(ByteBuffer source) {
+        if (source.get() == 0) {
+            return null;
+        }
+        String className = getString(source);
+        String message = getString(source);
+        StackTraceElement[] stackTrace = getFrames(source);
+        return new SpilledThrowable(className, message, stackTrace, getThrowable(source));
+    }
+
+    private static void putContext(ByteBuffer target, Map<String, ?> context) {
+        if (context == null) {
+            target.putInt(-1);
+            return;
+        }
+        target.putInt(context.size());
+        for (Map.Entry<String, ?> entry : context.entrySet()) {
+            putString(target, entry.getKey());
+            putString(target, entry.getValue() != null ? String.valueOf(entry.getValue()) : null);
+        }
+    }
+
+    private static Map<String, ?> getContext(ByteBuffer source) {
+        int size = source.getInt();
+        if (size < 0) {
+            return null;
+        }
+        ContextMap context = ContextMap.empty();
+        for (int i = 0; i < size; i++) {
+            context = context.with(getString(source), getString(source));
+        }
+        return context;
+    }
+
+    private static void putFrame(ByteBuffer target, StackTraceElement frame) {
+        if (frame == null) {
+            target.put((byte) 0);
+            return;
+        }
+        target.put((byte) 1);
+        putString(target, frame.getClassName());
+        putString(target, frame.getMethodName());
+        putString(target, frame.getFileName());
+        target.putInt(frame.getLineNumber());
+    }
+
+    private static StackTraceElement getFrame(ByteBuffer source) {
+        if (source.get() == 0) {
+            return null;
+        }
+        return new StackTraceElement(getString(source), getString(source), getString(source), source.getInt());
+    }
+
+    private static void putFrames(ByteBuffer target, StackTraceElement[] frames) {
+        if (frames == null) {
+            target.putInt(-1);
+            return;
+        }
+        target.putInt(frames.length);
+        for (StackTraceElement frame : frames) {
+            putFrame(target, frame);
+        }
+    }
+
+    private static StackTraceElement[] getFrames(ByteBuffer source) {
+        int length = source.getInt();
+        if (length < 0) {
+            return null;
+        }
+        StackTraceElement[] frames = new StackTraceElement[length];
+        for (int i = 0; i < length; i++) {
+            frames[i] = getFrame(source);
+        }
+        return frames;
+    }
+
+    private static void putThread(ByteBuffer target, ThreadSnapshot thread) {
+        if (thread == null) {
+            target.put((byte) 0);
+            return;
+        }
+        target.put((byte) 1);
+        target.putLong(thread.id());
+        putString(target, thread.name());
+        target.putInt(thread.priority());
+        putString(target, thread.group());
+    }
+
+    private static ThreadSnapshot getThread(ByteBuffer source) {
+        if (source.get() == 0) {
+            return null;
+        }
+        return ThreadSnapshot.of(source.getLong(), getString(source), source.getInt(), getString(source));
+    }
+    // ----- codec ----- ending
+
+    /**
+     * Exception restored from the spill file, reporting the class name, message, stack trace and causes of the
+     * original exception.
+     */
+    public static final class SpilledThrowable extends Throwable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String className;
+
+        SpilledThrowable(String className, String message, StackTraceElement[] stackTrace, Throwable cause) {
+            super(message, cause, false, true);
+            this.className = className;
+            setStackTrace(stackTrace != null ? stackTrace : new StackTraceElement[0]);
+        }
+
+        /** 原异常的类名 */
+        public String className() {
+            return this.className;
+        }
+
+        @Override
+        public String toString() {
+            String message = getLocalizedMessage();
+            return message != null ? this.className + ": " + message : this.className;
+        }
+
+    }
+
+    /** 溢出文件中恢复的自定义级别，只保留名称与数值 */
+    private static final class SpilledLevel implements CustomLevel {
+
+        private final String name;
+        private final int value;
+
+        SpilledLevel(String name, int value) {
+            this.name = name;
+            this.value = value;
+        }
+
+        @Override
+        public String name() {
+            return this.name;
+        }
+
+        @Override
+        public int value() {
+            return this.value;
+        }
+
+    }
+
+}
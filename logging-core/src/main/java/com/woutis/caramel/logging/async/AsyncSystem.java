@@ -16,16 +16,19 @@
 
 package com.woutis.caramel.logging.async;
 
-import akka.actor.ActorRef;
-import akka.actor.ActorSystem;
 import com.woutis.caramel.logging.CaramelLogger;
-import com.typesafe.config.Config;
-import com.typesafe.config.ConfigFactory;
+import com.woutis.caramel.logging.level.CustomLevel;
+import org.slf4j.event.Level;
 
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
-import java.util.Objects;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ServiceLoader;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
 
 /**
  * @author Kweny
@@ -37,6 +40,14 @@ public class AsyncSystem {
 
     private static final AsyncSystem INSTANCE = new AsyncSystem();
 
+    /**
+     * 未指定引擎时按此顺序选择第一个可用的引擎，缺少 Akka 时（例如使用 logging-core-lite）使用不依赖第三方类库的引擎；
+     * 虚拟线程引擎（Java 21+）不参与自动选择，Log4j 的 OutputStreamManager 是 synchronized 的，会钉住载体线程，需要通过
+     * {@code caramel.logging.async.engine=virtual} 显式启用
+     */
+    static final String AUTO = "auto";
+    private static final String[] AUTO_PREFERENCE = {AkkaAsyncBackend.NAME, RingAsyncBackend.NAME};
+
     public static AsyncSystem instance() {
         return INSTANCE;
     }
@@ -45,59 +56,224 @@ public class AsyncSystem {
         AsyncSystem.instance().initialize();
     }
 
-    private volatile ActorSystem actorSystem;
-    private volatile ActorRef actor;
+    private volatile AsyncBackend backend;
+    private volatile boolean terminated;
+    /** 正在提交给引擎的日志数，{@link #shutdown(Duration)} 停止引擎前等待其归零，避免日志提交给已停止的引擎 */
+    private final LongAdder publishing = new LongAdder();
+    private final AsyncOverflow overflow = new AsyncOverflow();
+    private final AsyncOverflow priorityOverflow = AsyncLanes.enabled() ? new AsyncOverflow(true, AsyncOverflow.PRIORITY_PREFIX) : null;
+    private final int prioritySeverity = AsyncLanes.prioritySeverity();
+    private final AsyncSpill spill = this.overflow.policy() == OverflowPolicy.SPILL
+            || this.priorityOverflow != null && this.priorityOverflow.policy() == OverflowPolicy.SPILL ? AsyncSpill.open() : null;
+    private final AsyncMetrics metrics = new AsyncMetrics(this);
 
     private AsyncSystem() {}
 
+    /** 使用指定的引擎，仅用于测试 */
+    AsyncSystem(AsyncBackend backend) {
+        this.backend = backend;
+    }
+
     private void initialize() {
-        Thread initThread = new Thread(() -> {
-            initializeSystem();
-            initializeActor();
-        });
-        initThread.setName("caramel-async-logging-init");
-        initThread.start();
+        String engine = System.getProperty("caramel.logging.async.engine", AUTO).trim();
+        AsyncBackend selected = resolveBackend(engine);
+        if (selected == null) {
+            throw new IllegalStateException("No AsyncBackend available for the AsyncSystem.");
+        }
+        if (!AUTO.equalsIgnoreCase(engine) && !selected.name().equalsIgnoreCase(engine)) {
+            logger.warn("[Caramel Logging] AsyncBackend '{}' is not available, falling back to '{}'.", engine, selected.name());
+        }
+        selected.start();
+        this.backend = selected;
+        if (this.spill != null) {
+            this.spill.start(this);
+        }
+        logger.info("[Caramel Logging] Initialize the AsyncSystem with the '{}' backend.", selected.name());
+        this.metrics.register();
+        AsyncShutdown.install(this);
     }
 
-    private void initializeSystem() {
-        String configContent = resolveAkkaConfig();
-        logger.info("[Caramel Logging] Initialize the AsyncSystem with the following config:\n{}", configContent);
-        Config config = ConfigFactory.parseString(configContent);
-        this.actorSystem = ActorSystem.create("CaramelAsyncLoggingSystem", config);
+    /**
+     * 按名称选择可用的引擎；{@value #AUTO} 时依次选择 {@link #AUTO_PREFERENCE} 中可用的引擎；都不可用时返回第一个可用的引擎
+     */
+    private static AsyncBackend resolveBackend(String engine) {
+        List<AsyncBackend> candidates = loadBackends();
+        String[] preference = AUTO.equalsIgnoreCase(engine) ? AUTO_PREFERENCE : new String[] {engine};
+        for (String name : preference) {
+            for (AsyncBackend candidate : candidates) {
+                if (candidate.name().equalsIgnoreCase(name)) {
+                    return candidate;
+                }
+            }
+        }
+        return candidates.isEmpty() ? null : candidates.get(0);
     }
 
-    private void initializeActor() {
-        this.actor = this.actorSystem.actorOf(AsyncActor.props(), "CaramelAsyncLoggingActor");
+    private static List<AsyncBackend> loadBackends() {
+        List<AsyncBackend> candidates = new ArrayList<>();
+        Iterator<AsyncBackend> iterator = ServiceLoader.load(AsyncBackend.class).iterator();
+        while (true) {
+            try {
+                if (!iterator.hasNext()) {
+                    break;
+                }
+                AsyncBackend candidate = iterator.next();
+                if (candidate.available()) {
+                    candidates.add(candidate);
+                }
+            } catch (Throwable t) {
+                if (missingDependency(t)) {
+                    // 引擎依赖的类库不在 classpath 上（例如 logging-core-lite 排除了 Akka），属于预期情况
+                    logger.debug(t, "[Caramel Logging] AsyncBackend skipped, its dependencies are not on the classpath.");
+                } else {
+                    logger.warn(t, "[Caramel Logging] AsyncBackend failed to load.");
+                }
+            }
+        }
+        return candidates;
     }
 
-    private String resolveAkkaConfig() {
-        StringBuilder builder = new StringBuilder();
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(Objects.requireNonNull(AsyncSystem.class.getResourceAsStream("/async-system.conf"))))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                builder.append(line).append("\n");
+    private static boolean missingDependency(Throwable t) {
+        for (Throwable cause = t; cause != null; cause = cause.getCause()) {
+            if (cause instanceof NoClassDefFoundError) {
+                return true;
             }
-        } catch (Exception e) {
-            logger.error(e, "AsyncSystem config file failed to load.");
         }
+        return false;
+    }
+
+    public AsyncBackend backend() {
+        return this.backend;
+    }
+
+    public AsyncOverflow overflow() {
+        return this.overflow;
+    }
+
+    /**
+     * @return 高优先级通道的溢出处理，未启用 {@code caramel.logging.async.lanes} 时返回 {@code null}
+     */
+    public AsyncOverflow priorityOverflow() {
+        return this.priorityOverflow;
+    }
+
+    /**
+     * @return 溢出文件，溢出策略不是 {@link OverflowPolicy#SPILL} 或文件无法打开时返回 {@code null}
+     */
+    public AsyncSpill spill() {
+        return this.spill;
+    }
 
-        int parallelismMin = parseIntValue(System.getProperty("caramel.logging.async.parallelism-min"), 8);
-        int parallelismMax = parseIntValue(System.getProperty("caramel.logging.async.parallelism-max"), 64);
-        double parallelismFactor = parseDoubleValue(System.getProperty("caramel.logging.async.parallelism-factor"), 1.0);
+    public AsyncMetrics metrics() {
+        return this.metrics;
+    }
 
-        return builder.toString()
-                .replace("${parallelism-min}", String.valueOf(parallelismMin))
-                .replace("${parallelism-max}", String.valueOf(parallelismMax))
-                .replace("${parallelism-factor}", String.valueOf(parallelismFactor));
+    /**
+     * 获取一个待填充的投递对象，填充后必须调用 {@link #publish(AsyncDelivery)}；引擎已满时按 {@link OverflowPolicy} 处理
+     *
+     * @param level 日志级别，自定义级别时为 {@code null}
+     * @param customLevel 自定义级别
+     * @return 投递对象，日志被丢弃时返回 {@code null}
+     */
+    public AsyncDelivery claim(Level level, CustomLevel customLevel) {
+        if (this.terminated) {
+            // 引擎已停止，后续日志在调用线程上直接输出
+            return AsyncDelivery.create().synchronous(true);
+        }
+        long start = this.metrics.now();
+        AsyncBackend current = this.backend;
+        boolean priority = this.priorityOverflow != null && AsyncOverflow.severity(level, customLevel) <= this.prioritySeverity;
+        // 溢出文件中仍有日志时新日志也写入文件，保证回放后的顺序
+        AsyncDelivery delivery = this.spill != null && this.spill.active() ? AsyncDelivery.create().spilled(true) : current.claim(priority);
+        if (delivery == null) {
+            delivery = (priority ? this.priorityOverflow : this.overflow).overflow(current, level, customLevel);
+        }
+        if (delivery != null) {
+            delivery.timestamp = start;
+            delivery.priority = priority;
+        }
+        return delivery;
     }
 
-    public ActorRef actor() {
-        while (this.actor == null) {
+    /**
+     * 将填充完毕的投递对象交给当前引擎处理
+     */
+    public void publish(AsyncDelivery delivery) {
+        if (delivery.synchronous()) {
+            AsyncHandler.handleInline(delivery);
+        } else if (delivery.spilled()) {
+            if (this.spill != null && this.spill.append(delivery)) {
+                this.metrics.enqueued(delivery.timestamp);
+            } else {
+                AsyncHandler.handleInline(delivery);
+            }
+        } else {
+            this.publishing.increment();
             try {
-                TimeUnit.MILLISECONDS.sleep(10);
-            } catch (Exception ignored) {}
+                if (this.terminated) {
+                    // 申请后引擎已停止，改为在调用线程上输出
+                    AsyncHandler.handleInline(delivery);
+                    return;
+                }
+                long claimed = delivery.timestamp;
+                delivery.timestamp = this.metrics.now();
+                this.backend.submit(delivery);
+                this.metrics.enqueued(claimed);
+            } finally {
+                this.publishing.decrement();
+            }
         }
-        return this.actor;
+    }
+
+    /**
+     * 等待此前提交的日志全部处理完毕，引擎继续运行
+     *
+     * @param timeout 最长等待时间
+     * @return 是否在超时前处理完毕
+     */
+    public boolean flush(Duration timeout) {
+        if (this.terminated) {
+            return true;
+        }
+        long start = System.nanoTime();
+        if (this.spill != null && !this.spill.await(timeout)) {
+            return false;
+        }
+        return this.backend.flush(timeout.minusNanos(System.nanoTime() - start));
+    }
+
+    /**
+     * 在超时时间内尽量处理完已提交的日志，然后停止引擎；之后的日志在调用线程上同步输出。重复调用时等待首次调用完成后直接返回
+     *
+     * @param timeout 最长等待时间
+     * @return 超时后仍未处理的日志数量
+     */
+    public synchronized long shutdown(Duration timeout) {
+        if (this.terminated) {
+            return this.backend.pending();
+        }
+        this.terminated = true;
+        AsyncBackend current = this.backend;
+        long start = System.nanoTime();
+        // 等待已越过 terminated 检查的生产者提交完毕再停止引擎，之后的生产者会读到 terminated 并在调用线程上输出
+        awaitUntil(() -> this.publishing.sum() <= 0, timeout);
+        if (this.spill != null) {
+            this.spill.await(timeout.minusNanos(System.nanoTime() - start));
+            // 未回放的日志留在文件中，由下次启动时回放
+            this.spill.close();
+        }
+        current.shutdown(timeout.minusNanos(System.nanoTime() - start));
+        long pending = current.pending() + (this.spill != null ? this.spill.pending() : 0);
+        if (pending > 0) {
+            logger.warn("[Caramel Logging] AsyncSystem shut down after {} ms with {} events still pending.", timeout.toMillis(), pending);
+        } else {
+            logger.info("[Caramel Logging] AsyncSystem shut down, all events are delivered.");
+        }
+        return pending;
+    }
+
+    public boolean isTerminated() {
+        return this.terminated;
     }
 
     static int parseIntValue(String value, int defaultValue) {
@@ -112,4 +288,20 @@ public class AsyncSystem {
         }
     }
 
+    /**
+     * 等待条件成立或超时
+     *
+     * @return 条件是否在超时前成立
+     */
+    static boolean awaitUntil(BooleanSupplier condition, Duration timeout) {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() - deadline >= 0) {
+                return false;
+            }
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+        return true;
+    }
+
 }
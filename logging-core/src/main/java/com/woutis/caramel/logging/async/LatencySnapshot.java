@@ -0,0 +1,83 @@
+/*
+ * Copyright 2018-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.woutis.caramel.logging.async;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * Immutable view of a {@link LatencyHistogram}, all values in nanoseconds.
+ *
+ * @author Kweny
+ * @since 0.0.1
+ */
+public class LatencySnapshot {
+
+    private final long count;
+    private final long mean;
+    private final long max;
+    private final long p50;
+    private final long p90;
+    private final long p99;
+    private final long p999;
+
+    @ConstructorProperties({"count", "mean", "max", "p50", "p90", "p99", "p999"})
+    public LatencySnapshot(long count, long mean, long max, long p50, long p90, long p99, long p999) {
+        this.count = count;
+        this.mean = mean;
+        this.max = max;
+        this.p50 = p50;
+        this.p90 = p90;
+        this.p99 = p99;
+        this.p999 = p999;
+    }
+
+    public long getCount() {
+        return this.count;
+    }
+
+    public long getMean() {
+        return this.mean;
+    }
+
+    public long getMax() {
+        return this.max;
+    }
+
+    public long getP50() {
+        return this.p50;
+    }
+
+    public long getP90() {
+        return this.p90;
+    }
+
+    public long getP99() {
+        return this.p99;
+    }
+
+    public long getP999() {
+        return this.p999;
+    }
+
+    @Override
+    public String toString() {
+        return "count=" + this.count + ", mean=" + this.mean + "ns, p50=" + this.p50 + "ns, p90=" + this.p90
+                + "ns, p99=" + this.p99 + "ns, p999=" + this.p999 + "ns, max=" + this.max + "ns";
+    }
+
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2018-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.woutis.caramel.logging.async;
+
+import com.woutis.caramel.logging.AsyncLogger;
+import com.woutis.caramel.logging.LoggingContext;
+import com.woutis.caramel.logging.ThreadSnapshot;
+
+/**
+ * Resolves which {@link LocationMode} the async path should use and captures the source location accordingly.
+ *
+ * <p>The mode can be fixed by the {@code caramel.logging.async.location} system property ({@code off}, {@code caller}
+ * or {@code full}). Otherwise it starts as {@link LocationMode#OFF} and is raised by layouts that call
+ * {@link #require(LocationMode)} for the location information they actually print. Events queued before a layout
+ * raises the mode carry no location; layouts must check {@link #deferred()} and leave the location empty for them
+ * instead of walking the stack of the consumer thread.
+ *
+ * @author Kweny
+ * @since 0.0.1
+ */
+public final class LocationCapture {
+
+    private static final String FQCN = AsyncLogger.class.getName();
+
+    private static final boolean FIXED;
+    private static volatile LocationMode mode;
+
+    static {
+        LocationMode configured = parseMode(System.getProperty("caramel.logging.async.location"));
+        FIXED = configured != null;
+        mode = FIXED ? configured : LocationMode.OFF;
+    }
+
+    private LocationCapture() {}
+
+    public static LocationMode mode() {
+        return mode;
+    }
+
+    /**
+     * 声明需要的日志源位置信息，仅在未通过系统属性固定模式时生效，且只会提升不会降低
+     *
+     * @param required 需要的采集方式
+     */
+    public static synchronized void require(LocationMode required) {
+        if (!FIXED && required != null && required.compareTo(mode) > 0) {
+            mode = required;
+        }
+    }
+
+    /** 采集完整堆栈，仅在 {@link LocationMode#FULL} 时返回非 {@code null} */
+    public static StackTraceElement[] captureStackTrace(LocationMode mode) {
+        return mode == LocationMode.FULL ? new Throwable().getStackTrace() : null;
+    }
+
+    /** 采集调用 {@link AsyncLogger} 的第一个栈帧，仅在 {@link LocationMode#CALLER} 时返回非 {@code null} */
+    public static StackTraceElement captureLocation(LocationMode mode) {
+        return mode == LocationMode.CALLER ? CallerLocator.locate(FQCN) : null;
+    }
+
+    /**
+     * 当前是否在消费线程上输出其它线程产生的日志；此时当前调用栈不属于日志源，未采集位置的日志应输出空位置
+     */
+    public static boolean deferred() {
+        ThreadSnapshot source = LoggingContext._sourceThread();
+        return source != null && source.id() != Thread.currentThread().getId();
+    }
+
+    static LocationMode parseMode(String value) {
+        if (value != null) {
+            for (LocationMode candidate : LocationMode.values()) {
+                if (candidate.name().equalsIgnoreCase(value.trim())) {
+                    return candidate;
+                }
+            }
+        }
+        return null;
+    }
+
+}
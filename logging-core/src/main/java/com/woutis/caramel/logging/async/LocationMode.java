@@ -0,0 +1,36 @@
+/*
+ * Copyright 2018-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.woutis.caramel.logging.async;
+
+/**
+ * 异步日志在调用线程上采集日志源位置的方式
+ *
+ * @author Kweny
+ * @since 0.0.1
+ */
+public enum LocationMode {
+
+    /** 不采集日志源位置 */
+    OFF,
+
+    /** 仅采集第一个调用方栈帧（Java 9+ 使用 StackWalker） */
+    CALLER,
+
+    /** 采集完整堆栈 */
+    FULL,
+
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2018-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.woutis.caramel.logging.async;
+
+/**
+ * Decides per logger whether async messages are rendered on the caller thread.
+ *
+ * <p>Lazy rendering (the default) queues the raw pattern and arguments and formats them on the consumer. Eager
+ * rendering formats them on the caller thread, so a queued event only holds the rendered string and no longer pins
+ * the argument objects or sees later changes to them. {@code caramel.logging.async.render} sets the default
+ * ({@code lazy} or {@code eager}); {@code caramel.logging.async.render.eager} and
+ * {@code caramel.logging.async.render.lazy} take comma separated logger name prefixes, the longest matching prefix wins.
+ *
+ * @author Kweny
+ * @since 0.0.1
+ */
+public final class MessageRendering {
+
+    static final String LAZY = "lazy";
+    static final String EAGER = "eager";
+
+    private MessageRendering() {}
+
+    /**
+     * @param loggerName logger 名称
+     * @return 该 logger 是否在调用线程上预先渲染消息
+     */
+    public static boolean eager(String loggerName) {
+        boolean eager = EAGER.equalsIgnoreCase(System.getProperty("caramel.logging.async.render", LAZY).trim());
+        int eagerMatch = longestPrefix(System.getProperty("caramel.logging.async.render.eager"), loggerName);
+        int lazyMatch = longestPrefix(System.getProperty("caramel.logging.async.render.lazy"), loggerName);
+        if (eagerMatch != lazyMatch) {
+            eager = eagerMatch > lazyMatch;
+        }
+        return eager;
+    }
+
+    /** 返回与 logger 名称匹配的最长前缀长度，没有匹配时返回 -1 */
+    private static int longestPrefix(String prefixes, String loggerName) {
+        int longest = -1;
+        if (prefixes == null || loggerName == null) {
+            return longest;
+        }
+        for (String prefix : prefixes.split(",")) {
+            prefix = prefix.trim();
+            if (!prefix.isEmpty() && loggerName.startsWith(prefix) && prefix.length() > longest) {
+                longest = prefix.length();
+            }
+        }
+        return longest;
+    }
+
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2018-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.woutis.caramel.logging.async;
+
+/**
+ * What the async path does with a new event when the backend has reached its capacity.
+ *
+ * @author Kweny
+ * @since 0.0.1
+ */
+public enum OverflowPolicy {
+
+    /** 在调用线程上等待空位，超过 {@code block-timeout}（默认 1 秒）后丢弃该日志；正在输出异步日志的线程不等待，改为同步输出 */
+    BLOCK,
+
+    /** 丢弃 {@code discard-level} 及更低级别的日志，更高级别的日志按 {@link #BLOCK} 处理 */
+    DISCARD,
+
+    /** 丢弃队列中最早的日志以腾出空位，引擎不支持时丢弃当前日志 */
+    DROP_OLDEST,
+
+    /** 改为在调用线程上同步输出 */
+    SYNCHRONOUS,
+
+    /** 写入内存映射的溢出文件，由后台线程在引擎腾出容量后按顺序回放，参见 {@link AsyncSpill} */
+    SPILL,
+
+}
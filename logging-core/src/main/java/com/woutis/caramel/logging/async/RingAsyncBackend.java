@@ -0,0 +1,115 @@
+/*
+ * Copyright 2018-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.woutis.caramel.logging.async;
+
+import com.woutis.caramel.logging.CaramelLogger;
+
+import java.time.Duration;
+
+/**
+ * {@link AsyncBackend} built on preallocated {@link AsyncRingBuffer}s.
+ *
+ * <p>With {@code caramel.logging.async.shards} greater than one, every shard owns its own ring and consumer thread.
+ * A slot is claimed before the event is filled, so the shard can only be chosen by the producer thread here, and
+ * {@code caramel.logging.async.shard-by=logger} falls back to thread sharding.
+ *
+ * @author Kweny
+ * @since 0.0.1
+ */
+public class RingAsyncBackend implements AsyncBackend {
+
+    private static final CaramelLogger logger = CaramelLogger.getLogger(RingAsyncBackend.class);
+
+    static final String NAME = "ring";
+
+    private volatile AsyncRingBuffer[] ringBuffers;
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public void start() {
+        int capacity = AsyncSystem.parseIntValue(System.getProperty("caramel.logging.async.capacity"), 65536);
+        int ringSize = AsyncSystem.parseIntValue(System.getProperty("caramel.logging.async.ring-size"), capacity);
+        int shards = AsyncSharding.shards();
+        if (shards > 1 && AsyncSharding.byLogger()) {
+            logger.warn("[Caramel Logging] RingAsyncBackend can only shard by thread, ignoring shard-by=logger.");
+        }
+        WaitStrategy waitStrategy = WaitStrategy.resolve();
+        long parkNanos = AsyncSystem.parseIntValue(System.getProperty("caramel.logging.async.park-nanos"), 100_000);
+        AsyncRingBuffer[] rings = new AsyncRingBuffer[shards];
+        for (int i = 0; i < shards; i++) {
+            rings[i] = new AsyncRingBuffer(ringSize, AsyncHandler.batchSize(), waitStrategy, parkNanos);
+            rings[i].start(shards == 1 ? "caramel-async-logging-ring" : "caramel-async-logging-ring-" + i);
+        }
+        this.ringBuffers = rings;
+    }
+
+    @Override
+    public AsyncDelivery claim() {
+        return claim(false, -1);
+    }
+
+    @Override
+    public AsyncDelivery claim(boolean priority, long sourceThread) {
+        AsyncRingBuffer[] rings = this.ringBuffers;
+        int shard = AsyncSharding.ofThread(sourceThread, rings.length);
+        AsyncDelivery delivery = rings[shard].tryClaim();
+        if (delivery != null) {
+            delivery.shard = shard;
+        }
+        return delivery;
+    }
+
+    @Override
+    public void submit(AsyncDelivery delivery) {
+        // 槽位属于申请时的环形缓冲区
+        this.ringBuffers[delivery.shard].publish(delivery);
+    }
+
+    @Override
+    public long pending() {
+        long pending = 0;
+        for (AsyncRingBuffer ring : this.ringBuffers) {
+            pending += Math.max(0, ring.claimedSequence() - ring.consumedSequence());
+        }
+        return pending;
+    }
+
+    @Override
+    public boolean flush(Duration timeout) {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        boolean flushed = true;
+        for (AsyncRingBuffer ring : this.ringBuffers) {
+            long target = ring.claimedSequence();
+            Duration remaining = Duration.ofNanos(Math.max(0, deadline - System.nanoTime()));
+            flushed &= AsyncSystem.awaitUntil(() -> ring.consumedSequence() >= target, remaining);
+        }
+        return flushed;
+    }
+
+    @Override
+    public void shutdown(Duration timeout) {
+        flush(timeout);
+        for (AsyncRingBuffer ring : this.ringBuffers) {
+            ring.stop();
+        }
+    }
+
+}
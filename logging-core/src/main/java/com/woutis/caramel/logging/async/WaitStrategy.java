@@ -0,0 +1,63 @@
+/*
+ * Copyright 2018-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.woutis.caramel.logging.async;
+
+/**
+ * How an idle async consumer waits for the next event, selected by {@code caramel.logging.async.wait-strategy}.
+ *
+ * <p>Used by the ring engine. The Akka engine is woken by its dispatcher and the virtual-thread engine always blocks,
+ * so neither of them spins.
+ *
+ * @author Kweny
+ * @since 0.0.1
+ */
+public enum WaitStrategy {
+
+    /** 持续自旋，延迟最低，空闲时占满一个 CPU 核心 */
+    BUSY_SPIN,
+
+    /** 短暂自旋后反复 {@link Thread#yield()}，延迟接近自旋，空闲时仍占用 CPU 但让出给其它线程 */
+    YIELD,
+
+    /** 依次自旋、让出、短暂休眠，兼顾延迟与 CPU，默认策略 */
+    BACKOFF,
+
+    /** 每次空闲都休眠 {@code park-nanos}，CPU 占用低，延迟取决于休眠时长 */
+    PARK,
+
+    /** 休眠直至生产者唤醒，CPU 占用最低，每次唤醒需要一次线程调度 */
+    BLOCKING,
+
+    ;
+
+    static WaitStrategy parse(String value) {
+        if (value != null) {
+            for (WaitStrategy candidate : WaitStrategy.values()) {
+                if (candidate.name().replace("_", "").equalsIgnoreCase(value.trim().replace("-", "").replace("_", ""))) {
+                    return candidate;
+                }
+            }
+        }
+        return BACKOFF;
+    }
+
+    static WaitStrategy resolve() {
+        return parse(System.getProperty("caramel.logging.async.wait-strategy"));
+    }
+
+}
@@ -34,4 +34,13 @@ public interface CustomLevelHandler {
 
     Class<? extends ILoggerFactory> factoryClass();
 
+    /**
+     * 将 {@code batch} 中输出的日志作为同一批次写出；实现只能锁定本批日志实际写入的输出，且不得改变各 appender 的刷新行为，默认直接执行
+     *
+     * @param batch 逐条输出日志的任务
+     */
+    default void batch(Runnable batch) {
+        batch.run();
+    }
+
 }
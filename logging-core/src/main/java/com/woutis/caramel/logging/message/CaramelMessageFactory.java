@@ -85,6 +85,13 @@ public class CaramelMessageFactory {
         return _InternalParameterizeTextFormatAssist.formatStringArgs(pattern, arguments);
     }
 
+    /**
+     * 在调用线程上立即渲染消息，参数直接写入线程内复用的缓冲区，供异步日志的预渲染模式使用
+     */
+    public static String render(final String pattern, final Object... args) {
+        return _InternalParameterizeTextFormatAssist.formatObjectsBuffered(pattern, args);
+    }
+
     public static String format(final int indentLevel, final String pattern, final Object... args) {
         StringBuilder result = new StringBuilder();
         for (int i = 0; i < indentLevel; i++) {
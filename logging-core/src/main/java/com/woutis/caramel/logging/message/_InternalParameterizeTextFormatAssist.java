@@ -41,6 +41,10 @@ class _InternalParameterizeTextFormatAssist {
     private static final char DELIM_START = '{';
     private static final char DELIM_STOP = '}';
     private static final char ESCAPE_CHAR = '\\';
+    private static final int RENDER_BUFFER_INITIAL = 256;
+    private static final int RENDER_BUFFER_RETAINED = 8192; // 容量超过该值的缓冲区会被替换，避免线程长期持有大缓冲区
+
+    private static final ThreadLocal<StringBuilder> renderBuffer = ThreadLocal.withInitial(() -> new StringBuilder(RENDER_BUFFER_INITIAL));
 
     static String formatMessage(final String pattern, final String[] arguments) {
         return formatStringArgs(pattern, arguments);
@@ -56,6 +60,86 @@ class _InternalParameterizeTextFormatAssist {
 
     private static String formatStringArgs0(final String pattern, final int length, final String[] arguments) {
         final char[] result = new char[length + sumStringLengths(arguments)];
+        return new String(result, 0, formatInto(pattern, length, arguments, result));
+    }
+
+    /**
+     * 与 {@link #formatStringArgs(String, String[])} 结果相同，但直接把参数渲染进当前线程复用的缓冲区，不为每个参数生成中间字符串
+     */
+    static String formatObjectsBuffered(final String pattern, final Object[] args) {
+        int length;
+        if (pattern == null || (length = pattern.length()) == 0 || args == null || args.length == 0) {
+            return pattern;
+        }
+        StringBuilder result = renderBuffer.get();
+        if (result.capacity() > RENDER_BUFFER_RETAINED) {
+            result = new StringBuilder(RENDER_BUFFER_INITIAL);
+            renderBuffer.set(result);
+        }
+        result.setLength(0);
+        int escapeCounter = 0;
+        int currentArgument = 0;
+        int i = 0;
+        for (; i < length - 1; i++) {
+            final char curChar = pattern.charAt(i);
+            if (curChar == ESCAPE_CHAR) {
+                escapeCounter ++;
+            } else {
+                if (isDelimPair(curChar, pattern.charAt(i + 1))) {
+                    i ++;
+                    appendEscapeChars(escapeCounter >> 1, result);
+                    if (isOdd(escapeCounter) || currentArgument >= args.length) {
+                        result.append(DELIM_START).append(DELIM_STOP);
+                    } else {
+                        appendArgument(args[currentArgument], result);
+                    }
+                    if (!isOdd(escapeCounter)) {
+                        currentArgument ++;
+                    }
+                } else {
+                    appendEscapeChars(escapeCounter, result);
+                    result.append(curChar);
+                }
+                escapeCounter = 0;
+            }
+        }
+        if (i == length - 1) {
+            final char curChar = pattern.charAt(i);
+            if (curChar == ESCAPE_CHAR) {
+                appendEscapeChars(escapeCounter + 1, result);
+            } else {
+                appendEscapeChars(escapeCounter, result);
+                result.append(curChar);
+            }
+        }
+        return result.toString();
+    }
+
+    private static void appendEscapeChars(int escapeCounter, final StringBuilder builder) {
+        while (escapeCounter > 0) {
+            builder.append(ESCAPE_CHAR);
+            escapeCounter --;
+        }
+    }
+
+    private static void appendArgument(final Object arg, final StringBuilder builder) {
+        // 常见的基本类型包装直接写入数值，避免 toString 的中间字符串；容器类型才需要递归去重集合
+        if (arg instanceof Integer || arg instanceof Short || arg instanceof Byte) {
+            builder.append(((Number) arg).intValue());
+        } else if (arg instanceof Long) {
+            builder.append(((Long) arg).longValue());
+        } else if (arg instanceof Boolean) {
+            builder.append(((Boolean) arg).booleanValue());
+        } else if (arg instanceof Character) {
+            builder.append(((Character) arg).charValue());
+        } else if (arg != null && (arg.getClass().isArray() || arg instanceof Map || arg instanceof Collection)) {
+            recursiveDeepToString(arg, builder, new HashSet<>());
+        } else {
+            recursiveDeepToString(arg, builder, null);
+        }
+    }
+
+    private static int formatInto(final String pattern, final int length, final String[] arguments, final char[] result) {
         int pos = 0;
         int escapeCounter = 0;
         int currentArgument = 0;
@@ -82,8 +166,7 @@ class _InternalParameterizeTextFormatAssist {
                 escapeCounter = 0;
             }
         }
-        pos = handleRemainingCharIfAny(pattern, length, result, pos, escapeCounter, i);
-        return new String(result, 0, pos);
+        return handleRemainingCharIfAny(pattern, length, result, pos, escapeCounter, i);
     }
 
     private static int sumStringLengths(final String[] arguments) {
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2018-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.woutis.caramel.logging.propagation;
+
+import java.util.concurrent.Executor;
+
+/**
+ * {@link Executor} running every task with the {@link com.woutis.caramel.logging.LoggingContext} of the thread that
+ * submitted it, see {@link ContextPropagation#wrap(Executor)}.
+ *
+ * @author Kweny
+ * @since 0.0.1
+ */
+public class ContextExecutor implements Executor {
+
+    private final Executor delegate;
+
+    ContextExecutor(Executor delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        this.delegate.execute(ContextPropagation.runnable(command));
+    }
+
+    @Override
+    public String toString() {
+        return "ContextExecutor(" + this.delegate + ")";
+    }
+
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright 2018-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.woutis.caramel.logging.propagation;
+
+import com.woutis.caramel.logging.LoggingContext;
+
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Carries the {@link LoggingContext} of the submitting thread over to the thread that runs a task.
+ *
+ * <p>Every wrapper takes a snapshot with {@link LoggingContext#replica()} when the task is created or submitted, which
+ * is a reference copy, and installs it with {@link LoggingContext#attach(Map)} only while the task runs, so the worker
+ * thread gets its own context back afterwards. For example:
+ * <pre>
+ *     ExecutorService executor = ContextPropagation.wrap(Executors.newFixedThreadPool(8));
+ *     CompletableFuture.supplyAsync(this::load, executor).thenApplyAsync(this::render, executor);
+ *     ContextPropagation.supplyAsync(this::load).thenApplyAsync(this::render, ContextPropagation.asyncExecutor());
+ * </pre>
+ *
+ * <p>A {@link CompletableFuture} runs each stage on the executor given to that stage, so every {@code *Async} call
+ * ({@code thenApplyAsync}, {@code thenAcceptAsync}, {@code handleAsync}, ...) needs an executor that carries the
+ * context: a wrapped executor, or {@link #asyncExecutor()} in place of the default async pool. A {@code *Async} call
+ * without an executor runs on the bare common pool and loses the context; Java 8 offers no way to change that default.
+ * Non-async stages run on whichever thread completes the previous stage and can wrap their function with
+ * {@link #function(Function)}, {@link #consumer(Consumer)} and the like.
+ *
+ * <p>A {@link java.util.concurrent.ForkJoinPool} can be wrapped as an {@link ExecutorService}, which covers the tasks
+ * given to the wrapper. Tasks forked inside the pool bypass the wrapper, so recursive fork/join computations extend
+ * {@link ContextRecursiveTask} or {@link ContextRecursiveAction} so that every subtask carries the context of the task
+ * that forked it.
+ *
+ * @author Kweny
+ * @since 0.0.1
+ */
+public final class ContextPropagation {
+
+    /** 与 {@link CompletableFuture} 默认的异步线程池相同：公共线程池并行度不足 2 时每个任务新建线程 */
+    private static final Executor ASYNC_EXECUTOR = new ContextExecutor(ForkJoinPool.getCommonPoolParallelism() > 1
+            ? ForkJoinPool.commonPool()
+            : task -> new Thread(task).start());
+
+    private ContextPropagation() {}
+
+    // ----- executors ----- beginning
+    /**
+     * 带上下文的默认异步线程池，代替 {@link CompletableFuture} 未指定线程池时使用的公共线程池，传给每个 {@code *Async} 调用
+     */
+    public static Executor asyncExecutor() {
+        return ASYNC_EXECUTOR;
+    }
+
+    public static Executor wrap(Executor executor) {
+        return executor instanceof ContextExecutor ? executor : new ContextExecutor(executor);
+    }
+
+    public static ExecutorService wrap(ExecutorService executor) {
+        return executor instanceof ContextExecutorService ? executor : new ContextExecutorService(executor);
+    }
+
+    public static ScheduledExecutorService wrap(ScheduledExecutorService executor) {
+        return executor instanceof ContextScheduledExecutorService ? executor : new ContextScheduledExecutorService(executor);
+    }
+    // ----- executors ----- ending
+
+    // ----- tasks ----- beginning
+    public static Runnable runnable(Runnable task) {
+        Map<String, ?> context = LoggingContext.replica();
+        return () -> {
+            try (LoggingContext.Scope ignored = LoggingContext.attach(context)) {
+                task.run();
+            }
+        };
+    }
+
+    public static <V> Callable<V> callable(Callable<V> task) {
+        Map<String, ?> context = LoggingContext.replica();
+        return () -> {
+            try (LoggingContext.Scope ignored = LoggingContext.attach(context)) {
+                return task.call();
+            }
+        };
+    }
+
+    /**
+     * 包装 fork/join 任务，在执行该任务的线程上安装上下文；任务内部再 fork 的子任务需各自包装，
+     * 或改为继承 {@link ContextRecursiveTask} / {@link ContextRecursiveAction}
+     */
+    public static <V> ForkJoinTask<V> forkJoinTask(ForkJoinTask<V> task) {
+        Map<String, ?> context = LoggingContext.replica();
+        return new RecursiveTask<V>() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected V compute() {
+                try (LoggingContext.Scope ignored = LoggingContext.attach(context)) {
+                    return task.invoke();
+                }
+            }
+        };
+    }
+    // ----- tasks ----- ending
+
+    // ----- functions ----- beginning
+    public static <T> Supplier<T> supplier(Supplier<T> supplier) {
+        Map<String, ?> context = LoggingContext.replica();
+        return () -> {
+            try (LoggingContext.Scope ignored = LoggingContext.attach(context)) {
+                return supplier.get();
+            }
+        };
+    }
+
+    public static <T, R> Function<T, R> function(Function<T, R> function) {
+        Map<String, ?> context = LoggingContext.replica();
+        return value -> {
+            try (LoggingContext.Scope ignored = LoggingContext.attach(context)) {
+                return function.apply(value);
+            }
+        };
+    }
+
+    public static <T> Consumer<T> consumer(Consumer<T> consumer) {
+        Map<String, ?> context = LoggingContext.replica();
+        return value -> {
+            try (LoggingContext.Scope ignored = LoggingContext.attach(context)) {
+                consumer.accept(value);
+            }
+        };
+    }
+
+    public static <T, U, R> BiFunction<T, U, R> biFunction(BiFunction<T, U, R> function) {
+        Map<String, ?> context = LoggingContext.replica();
+        return (left, right) -> {
+            try (LoggingContext.Scope ignored = LoggingContext.attach(context)) {
+                return function.apply(left, right);
+            }
+        };
+    }
+
+    public static <T, U> BiConsumer<T, U> biConsumer(BiConsumer<T, U> consumer) {
+        Map<String, ?> context = LoggingContext.replica();
+        return (left, right) -> {
+            try (LoggingContext.Scope ignored = LoggingContext.attach(context)) {
+                consumer.accept(left, right);
+            }
+        };
+    }
+    // ----- functions ----- ending
+
+    // ----- completable future ----- beginning
+    /** 同 {@link CompletableFuture#supplyAsync(Supplier)}，在 {@link #asyncExecutor()} 上带着当前上下文执行 */
+    public static <T> CompletableFuture<T> supplyAsync(Supplier<T> supplier) {
+        return CompletableFuture.supplyAsync(supplier, ASYNC_EXECUTOR);
+    }
+
+    public static <T> CompletableFuture<T> supplyAsync(Supplier<T> supplier, Executor executor) {
+        return CompletableFuture.supplyAsync(supplier(supplier), executor);
+    }
+
+    /** 同 {@link CompletableFuture#runAsync(Runnable)}，在 {@link #asyncExecutor()} 上带着当前上下文执行 */
+    public static CompletableFuture<Void> runAsync(Runnable task) {
+        return CompletableFuture.runAsync(task, ASYNC_EXECUTOR);
+    }
+
+    public static CompletableFuture<Void> runAsync(Runnable task, Executor executor) {
+        return CompletableFuture.runAsync(runnable(task), executor);
+    }
+    // ----- completable future ----- ending
+
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright 2018-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.woutis.caramel.logging.propagation;
+
+import com.woutis.caramel.logging.LoggingContext;
+
+import java.util.Map;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * {@link RecursiveAction} that runs with the {@link LoggingContext} of the thread that created it, the result-less
+ * counterpart of {@link ContextRecursiveTask}.
+ *
+ * @author Kweny
+ * @since 0.0.1
+ */
+public abstract class ContextRecursiveAction extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    private final transient Map<String, ?> context = LoggingContext.replica();
+
+    /** 在创建任务时的上下文中执行计算 */
+    protected abstract void computeInContext();
+
+    @Override
+    protected final void compute() {
+        try (LoggingContext.Scope ignored = LoggingContext.attach(this.context)) {
+            computeInContext();
+        }
+    }
+
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2018-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.woutis.caramel.logging.propagation;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link ScheduledExecutorService} running every task with the {@link com.woutis.caramel.logging.LoggingContext} of
+ * the thread that scheduled it, see {@link ContextPropagation#wrap(ScheduledExecutorService)}. Periodic tasks keep the
+ * context captured when they were scheduled for every run.
+ *
+ * @author Kweny
+ * @since 0.0.1
+ */
+public class ContextScheduledExecutorService extends ContextExecutorService implements ScheduledExecutorService {
+
+    private final ScheduledExecutorService delegate;
+
+    ContextScheduledExecutorService(ScheduledExecutorService delegate) {
+        super(delegate);
+        this.delegate = delegate;
+    }
+
+    @Override
+    public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+        return this.delegate.schedule(ContextPropagation.runnable(command), delay, unit);
+    }
+
+    @Override
+    public <V> ScheduledFuture<V> schedule(Callable<V> callable, long delay, TimeUnit unit) {
+        return this.delegate.schedule(ContextPropagation.callable(callable), delay, unit);
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleAtFixedRate(Runnable command, long initialDelay, long period, TimeUnit unit) {
+        return this.delegate.scheduleAtFixedRate(ContextPropagation.runnable(command), initialDelay, period, unit);
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleWithFixedDelay(Runnable command, long initialDelay, long delay, TimeUnit unit) {
+        return this.delegate.scheduleWithFixedDelay(ContextPropagation.runnable(command), initialDelay, delay, unit);
+    }
+
+    @Override
+    public String toString() {
+        return "ContextScheduledExecutorService(" + this.delegate + ")";
+    }
+
+}
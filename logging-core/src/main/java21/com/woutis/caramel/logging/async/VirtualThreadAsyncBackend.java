@@ -0,0 +1,220 @@
+/*
+ * Copyright 2018-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.woutis.caramel.logging.async;
+
+import com.woutis.caramel.logging.CaramelLogger;
+
+import java.time.Duration;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link AsyncBackend} consuming every shard on its own virtual thread (Java 21+).
+ *
+ * <p>A consumer blocked on appender I/O or on an empty queue parks its virtual thread and releases the carrier, so
+ * many shards can be consumed without dedicating platform threads to them. Shards, capacity, batching and recycling
+ * follow the same {@code caramel.logging.async.*} properties as {@link AkkaAsyncBackend}.
+ *
+ * <p>Never selected automatically: appenders that write under a monitor, such as Log4j's OutputStreamManager, pin the
+ * carrier thread. Enable it with {@code caramel.logging.async.engine=virtual}; it is only packaged when the build runs
+ * with {@code -Pjava21} and registered through {@code META-INF/versions/21/META-INF/services}.
+ *
+ * @author Kweny
+ * @since 0.0.1
+ */
+public class VirtualThreadAsyncBackend implements AsyncBackend {
+
+    private static final CaramelLogger logger = CaramelLogger.getLogger(VirtualThreadAsyncBackend.class);
+
+    static final String NAME = "virtual";
+
+    /** 队列为空时消费者检查停止标记的间隔 */
+    private static final long POLL_MILLIS = 100;
+
+    private int capacity;
+    private Shard[] shards;
+    private boolean shardByLogger;
+    private AsyncDeliveryPool pool;
+    private final AtomicInteger occupied = new AtomicInteger();
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+
+    private volatile boolean running;
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public boolean available() {
+        return Runtime.version().feature() >= 21;
+    }
+
+    @Override
+    public void start() {
+        this.capacity = AsyncSystem.parseIntValue(System.getProperty("caramel.logging.async.capacity"), 65536);
+        this.shardByLogger = AsyncSharding.byLogger();
+        boolean recycle = Boolean.parseBoolean(System.getProperty("caramel.logging.async.recycle", "false"));
+        this.pool = recycle ? new AsyncDeliveryPool(AsyncSystem.parseIntValue(System.getProperty("caramel.logging.async.pool-size"), 1024)) : null;
+        int batchSize = AsyncHandler.batchSize();
+        Shard[] created = new Shard[AsyncSharding.shards()];
+        for (int i = 0; i < created.length; i++) {
+            created[i] = new Shard(batchSize);
+        }
+        this.shards = created;
+        this.running = true;
+        for (int i = 0; i < created.length; i++) {
+            Shard shard = created[i];
+            Thread.ofVirtual()
+                    .name(created.length == 1 ? "caramel-async-logging-virtual" : "caramel-async-logging-virtual-" + i)
+                    .start(() -> consume(shard));
+        }
+    }
+
+    @Override
+    public AsyncDelivery claim() {
+        return claim(false, -1);
+    }
+
+    @Override
+    public AsyncDelivery claim(boolean priority, long sourceThread) {
+        if (this.occupied.incrementAndGet() > this.capacity) {
+            this.occupied.decrementAndGet();
+            return null;
+        }
+        AsyncDelivery delivery = this.pool != null ? this.pool.acquire() : AsyncDelivery.create();
+        delivery.shard = AsyncSharding.ofThread(sourceThread, this.shards.length);
+        return delivery;
+    }
+
+    @Override
+    public void submit(AsyncDelivery delivery) {
+        this.submitted.incrementAndGet();
+        Shard shard = this.shards[this.shardByLogger ? AsyncSharding.ofLogger(delivery, this.shards.length) : delivery.shard];
+        shard.queue.offer(delivery);
+    }
+
+    @Override
+    public boolean evictOldest() {
+        int start = AsyncSharding.ofCurrentThread(this.shards.length);
+        for (int i = 0; i < this.shards.length; i++) {
+            AsyncDelivery oldest = this.shards[(start + i) % this.shards.length].queue.poll();
+            if (oldest != null) {
+                this.occupied.decrementAndGet();
+                recycle(oldest);
+                this.completed.incrementAndGet();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void consume(Shard shard) {
+        while (this.running || !shard.queue.isEmpty()) {
+            AsyncDelivery first;
+            try {
+                first = shard.queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                continue;
+            }
+            if (first == null) {
+                continue;
+            }
+            this.occupied.decrementAndGet();
+            if (shard.batch == null) {
+                receipt(first);
+            } else {
+                receipt(shard, first);
+            }
+        }
+    }
+
+    private void receipt(AsyncDelivery delivery) {
+        try {
+            AsyncHandler.handle(delivery);
+        } catch (Throwable t) {
+            logger.error(t, "[Caramel Logging] VirtualThreadAsyncBackend failed to handle delivery.");
+        } finally {
+            recycle(delivery);
+            this.completed.incrementAndGet();
+        }
+    }
+
+    private void receipt(Shard shard, AsyncDelivery first) {
+        AsyncDelivery[] batch = shard.batch;
+        int size = 0;
+        batch[size++] = first;
+        AsyncDelivery delivery;
+        while (size < batch.length && (delivery = shard.queue.poll()) != null) {
+            this.occupied.decrementAndGet();
+            batch[size++] = delivery;
+        }
+        try {
+            AsyncHandler.handleBatch(batch, size);
+        } catch (Throwable t) {
+            logger.error(t, "[Caramel Logging] VirtualThreadAsyncBackend failed to handle batch.");
+        } finally {
+            for (int i = 0; i < size; i++) {
+                recycle(batch[i]);
+                batch[i] = null;
+            }
+            this.completed.addAndGet(size);
+        }
+    }
+
+    private void recycle(AsyncDelivery delivery) {
+        if (this.pool != null) {
+            this.pool.release(delivery);
+        }
+    }
+
+    @Override
+    public long pending() {
+        return Math.max(0, this.submitted.get() - this.completed.get());
+    }
+
+    @Override
+    public boolean flush(Duration timeout) {
+        long target = this.submitted.get();
+        return AsyncSystem.awaitUntil(() -> this.completed.get() >= target, timeout);
+    }
+
+    @Override
+    public void shutdown(Duration timeout) {
+        flush(timeout);
+        // 不中断消费者，避免中断正在进行的 appender I/O，消费者在下一次轮询超时后退出
+        this.running = false;
+    }
+
+    /** 一个分片：独立的队列与消费它的虚拟线程 */
+    private static final class Shard {
+
+        final BlockingQueue<AsyncDelivery> queue = new LinkedBlockingQueue<>();
+        final AsyncDelivery[] batch;
+
+        Shard(int batchSize) {
+            this.batch = batchSize > 1 ? new AsyncDelivery[batchSize] : null;
+        }
+
+    }
+
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2018-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.woutis.caramel.logging.async;
+
+/**
+ * Java 9+ caller locator, walks only the frames needed instead of filling in the whole stack trace.
+ *
+ * @author Kweny
+ * @since 0.0.1
+ */
+final class CallerLocator {
+
+    private static final StackWalker WALKER = StackWalker.getInstance();
+
+    private CallerLocator() {}
+
+    /**
+     * 返回最后一个 {@code fqcn} 栈帧之后的第一个栈帧，即日志方法的调用方
+     *
+     * @param fqcn 日志包装类的全限定名
+     * @return 调用方栈帧，找不到时返回 {@code null}
+     */
+    static StackTraceElement locate(String fqcn) {
+        return WALKER.walk(frames -> frames
+                .dropWhile(frame -> !fqcn.equals(frame.getClassName()))
+                .dropWhile(frame -> fqcn.equals(frame.getClassName()))
+                .findFirst()
+                .map(StackWalker.StackFrame::toStackTraceElement)
+                .orElse(null));
+    }
+
+}
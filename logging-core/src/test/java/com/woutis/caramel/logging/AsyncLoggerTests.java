@@ -0,0 +1,64 @@
+/*
+ * Copyright 2018-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.woutis.caramel.logging;
+
+import com.woutis.caramel.logging.async.AsyncMetrics;
+import com.woutis.caramel.logging.async.AsyncSystem;
+import org.junit.jupiter.api.Test;
+import org.slf4j.MarkerFactory;
+
+import java.time.Duration;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+/**
+ * Tests for {@link AsyncLogger}, the test configuration enables WARN and above.
+ *
+ * @author Kweny
+ * @since 0.0.1
+ */
+class AsyncLoggerTests {
+
+    private final AsyncLogger logger = CaramelLogger.getAsyncLogger(AsyncLoggerTests.class);
+
+    @Test
+    void disabledLevelIsNotEnqueued() {
+        AsyncMetrics metrics = AsyncSystem.instance().metrics();
+        long enqueued = metrics.getEnqueued() + metrics.getSynchronous();
+
+        this.logger.trace("trace {}", 1);
+        this.logger.debug("debug {}", 2);
+        this.logger.info("info {}", 3);
+        this.logger.info(MarkerFactory.getMarker("AUDIT"), "info {}", 4);
+
+        assertThat(metrics.getEnqueued() + metrics.getSynchronous(), is(enqueued));
+    }
+
+    @Test
+    void enabledLevelIsEnqueued() {
+        AsyncMetrics metrics = AsyncSystem.instance().metrics();
+        long enqueued = metrics.getEnqueued() + metrics.getSynchronous();
+
+        this.logger.warn("warn {}", 1);
+        this.logger.error("error {}", 2);
+
+        assertThat(metrics.getEnqueued() + metrics.getSynchronous(), is(enqueued + 2));
+        assertThat(AsyncSystem.instance().flush(Duration.ofSeconds(30)), is(true));
+    }
+
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2018-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.woutis.caramel.logging;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Tests for the hash array mapped trie of {@link ContextMap}, compared against a {@link HashMap}.
+ *
+ * @author Kweny
+ * @since 0.0.1
+ */
+class ContextMapTests {
+
+    @Test
+    void randomOperationsMatchHashMap() {
+        List<String> keys = keys();
+        Random random = new Random(20220401L);
+        ContextMap map = ContextMap.empty();
+        Map<String, Object> model = new HashMap<>();
+        List<ContextMap> versions = new ArrayList<>();
+        List<Map<String, Object>> models = new ArrayList<>();
+
+        for (int step = 0; step < 20000; step++) {
+            String key = keys.get(random.nextInt(keys.size()));
+            if (random.nextInt(3) == 0) {
+                map = map.without(key);
+                model.remove(key);
+            } else {
+                Object value = random.nextInt(10) == 0 ? null : random.nextInt(100);
+                map = map.with(key, value);
+                model.put(key, value);
+            }
+            assertThat(map.size(), is(model.size()));
+            assertThat(map.get(key), is(model.get(key)));
+            assertThat(map.containsKey(key), is(model.containsKey(key)));
+            if (step % 1000 == 0) {
+                versions.add(map);
+                models.add(new HashMap<>(model));
+            }
+        }
+
+        assertSameContent(map, model);
+        // 旧版本不受之后修改的影响
+        for (int i = 0; i < versions.size(); i++) {
+            assertSameContent(versions.get(i), models.get(i));
+        }
+        // 删除全部键后回到空 map
+        for (String key : keys) {
+            map = map.without(key);
+        }
+        assertThat(map.isEmpty(), is(true));
+        assertThat(map.entrySet().iterator().hasNext(), is(false));
+    }
+
+    @Test
+    void collidingKeysAreKeptApart() {
+        // "Aa" 与 "BB" 的 hashCode 相同，由它们拼接出的等长字符串也两两相同
+        ContextMap map = ContextMap.empty().with("AaAa", 1).with("AaBB", 2).with("BBAa", 3).with("BBBB", 4);
+        assertThat(map.size(), is(4));
+        assertThat(map.get("AaBB"), is(2));
+
+        ContextMap removed = map.without("AaBB").without("BBBB");
+        assertThat(removed, is(mapOf("AaAa", 1, "BBAa", 3)));
+        assertThat(map.get("AaBB"), is(2));
+        assertThat(removed.without("AaAa").without("BBAa").isEmpty(), is(true));
+    }
+
+    @Test
+    void unchangedWritesReturnTheSameMap() {
+        ContextMap map = ContextMap.empty().with("a", "1");
+        assertThat(map.with("a", map.get("a")), sameInstance(map));
+        assertThat(map.without("missing"), sameInstance(map));
+        assertThat(map.without((String) null), sameInstance(map));
+        assertThat(ContextMap.empty().withAll(map), sameInstance(map));
+        assertThat(ContextMap.of(map), sameInstance(map));
+    }
+
+    @Test
+    void nullValuesAreKept() {
+        ContextMap map = ContextMap.empty().with("a", null);
+        assertThat(map.containsKey("a"), is(true));
+        assertThat(map.get("a"), is(nullValue()));
+        assertThat(map.size(), is(1));
+    }
+
+    @Test
+    void nullKeyIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> ContextMap.empty().with((String) null, 1));
+    }
+
+    @Test
+    void foreignKeysAreIgnored() {
+        ContextMap map = ContextMap.empty().with("1", 1);
+        assertThat(map.containsKey(1), is(false));
+        assertThat(map.get(1), is(nullValue()));
+    }
+
+    private static void assertSameContent(ContextMap map, Map<String, Object> model) {
+        assertThat(map.size(), is(model.size()));
+        assertThat(map, is(model));
+        assertThat(model, is((Map<String, Object>) map));
+        Map<String, Object> visited = new HashMap<>();
+        map.forEach((key, value) -> assertThat(visited.put(key, value), is(nullValue())));
+        assertThat(visited, is(model));
+        Map<String, Object> iterated = new HashMap<>();
+        for (Map.Entry<String, Object> entry : map.entrySet()) {
+            iterated.put(entry.getKey(), entry.getValue());
+        }
+        assertThat(iterated, is(model));
+    }
+
+    /** 普通键加上多组 hashCode 相同的键，覆盖冲突节点 */
+    private static List<String> keys() {
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            keys.add("key-" + i);
+        }
+        String[] blocks = {"Aa", "BB"};
+        for (int i = 0; i < 16; i++) {
+            StringBuilder key = new StringBuilder();
+            for (int bit = 0; bit < 4; bit++) {
+                key.append(blocks[(i >> bit) & 1]);
+            }
+            keys.add(key.toString());
+        }
+        return keys;
+    }
+
+    private static Map<String, Object> mapOf(Object... entries) {
+        Map<String, Object> map = new LinkedHashMap<>();
+        for (int i = 0; i < entries.length; i += 2) {
+            map.put((String) entries[i], entries[i + 1]);
+        }
+        return map;
+    }
+
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright 2018-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.woutis.caramel.logging;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * Tests for {@link LoggingContext}: the {@link ContextKey} slots of {@link ContextMap} and scopes.
+ *
+ * @author Kweny
+ * @since 0.0.1
+ */
+class LoggingContextTests {
+
+    private static final ContextKey TRACE = LoggingContext.key("test.trace");
+    private static final ContextKey USER = LoggingContext.key("test.user");
+
+    @AfterEach
+    void release() {
+        LoggingContext.release();
+    }
+
+    @Test
+    void keyRegistrationIsIdempotent() {
+        assertThat(LoggingContext.key("test.trace"), sameInstance(TRACE));
+        assertThat(ContextKey.find("test.user"), sameInstance(USER));
+        assertThat(ContextKey.byIndex(TRACE.index()), sameInstance(TRACE));
+        assertThat(USER.index(), not(TRACE.index()));
+    }
+
+    @Test
+    void slotsBehaveLikeEntries() {
+        ContextMap map = ContextMap.empty().with(TRACE, "t-1").with("plain", 1).with("test.user", "alice");
+        assertThat(map.get(TRACE), is("t-1"));
+        assertThat(map.get("test.trace"), is("t-1"));
+        assertThat(map.get(USER), is("alice"));
+        assertThat(map.containsKey(USER), is(true));
+        assertThat(map.size(), is(3));
+
+        Map<String, Object> expected = new HashMap<>();
+        expected.put("test.trace", "t-1");
+        expected.put("test.user", "alice");
+        expected.put("plain", 1);
+        assertThat(map, is(expected));
+
+        ContextMap removed = map.without(TRACE).with(USER, null);
+        assertThat(removed.size(), is(1));
+        assertThat(removed.containsKey("test.trace"), is(false));
+        assertThat(removed.get(USER), is(nullValue()));
+        assertThat(map.get(TRACE), is("t-1"));
+        assertThat(map.with(TRACE, map.get(TRACE)), sameInstance(map));
+    }
+
+    @Test
+    void keyWrittenBeforeRegistrationMovesToItsSlot() {
+        ContextMap map = ContextMap.empty().with("test.late", "before");
+        ContextKey late = LoggingContext.key("test.late");
+
+        assertThat(map.get(late), is("before"));
+        assertThat(map.containsKey(late), is(true));
+
+        ContextMap updated = map.with(late, "after");
+        assertThat(updated.get("test.late"), is("after"));
+        assertThat(updated.size(), is(1));
+        assertThat(map.get(late), is("before"));
+    }
+
+    @Test
+    void snapshotIsNotChangedBySlotWrites() {
+        LoggingContext.set(TRACE, "t-1");
+        LoggingContext.set("plain", 1);
+        Map<String, ?> snapshot = LoggingContext.replica();
+
+        LoggingContext.set(TRACE, "t-2");
+        LoggingContext.remove("plain");
+        LoggingContext.set(USER, "alice");
+
+        assertThat(snapshot.get("test.trace"), is("t-1"));
+        assertThat(snapshot.get("plain"), is(1));
+        assertThat(snapshot.containsKey("test.user"), is(false));
+        assertThat(LoggingContext.get(TRACE), is("t-2"));
+        assertThat(LoggingContext.get("test.user"), is("alice"));
+        assertThat(LoggingContext.get("plain"), is(nullValue()));
+    }
+
+    @Test
+    void stringAccessUsesSlotsOfRegisteredKeys() {
+        LoggingContext.set("test.trace", "t-1");
+        assertThat(LoggingContext.get(TRACE), is("t-1"));
+        assertThat(LoggingContext.remove(TRACE), is("t-1"));
+        assertThat(LoggingContext.emptily(), is(true));
+    }
+
+    @Test
+    void scopeRestoresTheContextOnClose() {
+        LoggingContext.set("outer", 1);
+        try (LoggingContext.Scope ignored = LoggingContext.scope("inner", 2).and(TRACE, "t-1")) {
+            LoggingContext.set("outer", 3);
+            LoggingContext.remove("missing");
+            assertThat(LoggingContext.get("inner"), is(2));
+            assertThat(LoggingContext.get(TRACE), is("t-1"));
+            assertThat(LoggingContext.get("outer"), is(3));
+        }
+        assertThat(LoggingContext.get("outer"), is(1));
+        assertThat(LoggingContext.get("inner"), is(nullValue()));
+        assertThat(LoggingContext.get(TRACE), is(nullValue()));
+    }
+
+    @Test
+    void closingAnOuterScopeClosesInnerScopes() {
+        LoggingContext.Scope outer = LoggingContext.scope("level", 1);
+        LoggingContext.Scope inner = LoggingContext.scope("level", 2);
+        outer.close();
+        assertThat(LoggingContext.get("level"), is(nullValue()));
+
+        LoggingContext.set("level", 3);
+        inner.close();
+        assertThat(LoggingContext.get("level"), is(3));
+    }
+
+    @Test
+    void scopeClosedOnAnotherThreadDoesNothing() throws InterruptedException {
+        LoggingContext.Scope scope = LoggingContext.scope("owner", "main");
+        Thread thread = new Thread(scope::close);
+        thread.start();
+        thread.join();
+        assertThat(LoggingContext.get("owner"), is("main"));
+        scope.close();
+        assertThat(LoggingContext.get("owner"), is(nullValue()));
+    }
+
+    @Test
+    void attachReplacesTheContextUntilClosed() throws InterruptedException {
+        LoggingContext.set("request", "r-1");
+        Map<String, ?> snapshot = LoggingContext.replica();
+        Object[] seen = new Object[3];
+        Thread worker = new Thread(() -> {
+            LoggingContext.set("worker", true);
+            try (LoggingContext.Scope ignored = LoggingContext.attach(snapshot)) {
+                seen[0] = LoggingContext.get("request");
+                seen[1] = LoggingContext.get("worker");
+            }
+            seen[2] = LoggingContext.get("worker");
+            LoggingContext.release();
+        });
+        worker.start();
+        worker.join();
+        assertThat(seen[0], is("r-1"));
+        assertThat(seen[1], is(nullValue()));
+        assertThat(seen[2], is(true));
+    }
+
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2018-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.woutis.caramel.logging;
+
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * Tests for {@link ThreadSnapshot}.
+ *
+ * @author Kweny
+ * @since 0.0.1
+ */
+class ThreadSnapshotTests {
+
+    @Test
+    void snapshotIsCachedUntilThreadChanges() throws InterruptedException {
+        Thread thread = new Thread(() -> {
+            ThreadSnapshot first = ThreadSnapshot.current();
+            assertThat(ThreadSnapshot.current(), sameInstance(first));
+            assertThat(first.name(), is("snapshot-test"));
+            assertThat(first.id(), is(Thread.currentThread().getId()));
+
+            Thread.currentThread().setName("snapshot-test-renamed");
+            ThreadSnapshot renamed = ThreadSnapshot.current();
+            assertThat(renamed, not(sameInstance(first)));
+            assertThat(renamed.name(), is("snapshot-test-renamed"));
+            assertThat(first.name(), is("snapshot-test"));
+
+            Thread.currentThread().setPriority(Thread.MIN_PRIORITY);
+            assertThat(ThreadSnapshot.current().priority(), is(Thread.MIN_PRIORITY));
+        }, "snapshot-test");
+        Throwable[] failure = new Throwable[1];
+        thread.setUncaughtExceptionHandler((t, e) -> failure[0] = e);
+        thread.start();
+        thread.join();
+        assertThat(failure[0], nullValue());
+    }
+
+}
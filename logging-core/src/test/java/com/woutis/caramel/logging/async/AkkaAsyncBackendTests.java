@@ -0,0 +1,249 @@
+/*
+ * Copyright 2018-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.woutis.caramel.logging.async;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.IntConsumer;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * Tests for the lanes, recycling and sharding of {@link AkkaAsyncBackend}, driven through {@code submit} and
+ * {@code poll} without starting Akka.
+ *
+ * @author Kweny
+ * @since 0.0.1
+ */
+class AkkaAsyncBackendTests {
+
+    @AfterEach
+    void clear() {
+        for (String name : new String[] {"lanes.ordering", "shards", "shard-by", "recycle"}) {
+            System.clearProperty("caramel.logging.async." + name);
+        }
+    }
+
+    @Test
+    void priorityOvertakesEverythingByDefault() throws InterruptedException {
+        AkkaAsyncBackend backend = new AkkaAsyncBackend();
+        submit(backend, "a1", false);
+        submitOnOtherThread(backend, "b1");
+        submit(backend, "p", true);
+
+        assertThat(drain(backend), contains("p", "a1", "b1"));
+    }
+
+    @Test
+    void priorityWaitsForEarlierEventsOfItsThread() throws InterruptedException {
+        System.setProperty("caramel.logging.async.lanes.ordering", "thread");
+        AkkaAsyncBackend backend = new AkkaAsyncBackend();
+        submit(backend, "a1", false);
+        submitOnOtherThread(backend, "b1", "b2");
+        submit(backend, "a2", false);
+        submit(backend, "p", true);
+        submit(backend, "a3", false);
+
+        assertThat(drain(backend), contains("a1", "a2", "p", "b1", "b2", "a3"));
+    }
+
+    @Test
+    void priorityWithoutBacklogIsNotHeld() throws InterruptedException {
+        System.setProperty("caramel.logging.async.lanes.ordering", "thread");
+        AkkaAsyncBackend backend = new AkkaAsyncBackend();
+        submit(backend, "a1", false);
+        assertThat(drain(backend), contains("a1"));
+
+        submitOnOtherThread(backend, "b1");
+        submit(backend, "p", true);
+
+        assertThat(drain(backend), contains("p", "b1"));
+    }
+
+    @Test
+    void threadOrderingIsIgnoredWhenShardedByLogger() throws InterruptedException {
+        System.setProperty("caramel.logging.async.lanes.ordering", "thread");
+        System.setProperty("caramel.logging.async.shards", "2");
+        System.setProperty("caramel.logging.async.shard-by", "logger");
+        AkkaAsyncBackend backend = new AkkaAsyncBackend();
+        submit(backend, "a1", false);
+        submit(backend, "p", true);
+
+        // 没有 logger 的日志都落在第一个分片
+        assertThat(drain(backend), contains("p", "a1"));
+    }
+
+    @Test
+    void evictedEventsAreRecycled() {
+        System.setProperty("caramel.logging.async.recycle", "true");
+        AkkaAsyncBackend backend = new AkkaAsyncBackend();
+        AsyncDelivery evicted = submit(backend, "a1", false);
+        assertThat(backend.evictOldest(), is(true));
+
+        assertThat(backend.claim(false), sameInstance(evicted));
+    }
+
+    @Test
+    void evictedEventsAreNotRecycledWithThreadOrdering() {
+        System.setProperty("caramel.logging.async.recycle", "true");
+        System.setProperty("caramel.logging.async.lanes.ordering", "thread");
+        AkkaAsyncBackend backend = new AkkaAsyncBackend();
+        AsyncDelivery evicted = submit(backend, "a1", false);
+        assertThat(backend.evictOldest(), is(true));
+
+        // actor 遍历普通队列时可能仍持有被丢弃的对象，复用后会把新日志当作它移出队列
+        AsyncDelivery next = submit(backend, "a2", false);
+        assertThat(next, not(sameInstance(evicted)));
+        submit(backend, "p", true);
+        assertThat(drain(backend), contains("a2", "p"));
+    }
+
+    @Test
+    void shardsByThreadKeepPerThreadOrder() throws InterruptedException {
+        System.setProperty("caramel.logging.async.shards", "4");
+        AkkaAsyncBackend backend = new AkkaAsyncBackend();
+        int producers = 4;
+        int count = 1_000;
+        long[] threads = new long[producers];
+        runConcurrently(producers, producer -> {
+            threads[producer] = Thread.currentThread().getId();
+            for (int i = 0; i < count; i++) {
+                submit(backend, producer + ":" + i, false);
+            }
+        });
+
+        int[] last = new int[producers];
+        Arrays.fill(last, -1);
+        for (int shard = 0; shard < 4; shard++) {
+            for (String message : drain(backend, shard)) {
+                int producer = Integer.parseInt(message.substring(0, message.indexOf(':')));
+                // 同一线程的日志都在它的分片中，且保持提交顺序
+                assertThat(shard, is(AsyncSharding.ofThread(threads[producer], 4)));
+                assertThat(Integer.parseInt(message.substring(message.indexOf(':') + 1)), is(last[producer] + 1));
+                last[producer]++;
+            }
+        }
+        for (int producer = 0; producer < producers; producer++) {
+            assertThat(last[producer], is(count - 1));
+        }
+    }
+
+    @Test
+    void shardsByLoggerKeepPerLoggerOrder() throws InterruptedException {
+        System.setProperty("caramel.logging.async.shards", "4");
+        System.setProperty("caramel.logging.async.shard-by", "logger");
+        AkkaAsyncBackend backend = new AkkaAsyncBackend();
+        int producers = 4;
+        int loggers = 8;
+        int count = 250;
+        runConcurrently(producers, producer -> {
+            for (int i = 0; i < count; i++) {
+                for (int l = 0; l < loggers; l++) {
+                    AsyncDelivery delivery = backend.claim(false);
+                    backend.submit(delivery.logger(LoggerFactory.getLogger("shard-test-" + l)).message(producer + ":" + i));
+                }
+            }
+        });
+
+        int[][] last = new int[loggers][producers];
+        for (int[] row : last) {
+            Arrays.fill(row, -1);
+        }
+        for (int index = 0; index < 4; index++) {
+            AkkaAsyncBackend.Shard shard = backend.shard(index);
+            AsyncDelivery delivery;
+            while ((delivery = backend.poll(shard)) != null) {
+                // 同一 logger 的日志不论来自哪个线程都在同一分片中，同一线程对它的日志保持提交顺序
+                assertThat(index, is(AsyncSharding.ofLogger(delivery, 4)));
+                int logger = Integer.parseInt(delivery.logger().getName().substring("shard-test-".length()));
+                String message = delivery.message();
+                int producer = Integer.parseInt(message.substring(0, message.indexOf(':')));
+                assertThat(Integer.parseInt(message.substring(message.indexOf(':') + 1)), is(last[logger][producer] + 1));
+                last[logger][producer]++;
+            }
+        }
+        for (int[] row : last) {
+            for (int value : row) {
+                assertThat(value, is(count - 1));
+            }
+        }
+    }
+
+    private static AsyncDelivery submit(AkkaAsyncBackend backend, String message, boolean priority) {
+        AsyncDelivery delivery = backend.claim(priority);
+        delivery.priority = priority;
+        backend.submit(delivery.message(message));
+        return delivery;
+    }
+
+    private static void submitOnOtherThread(AkkaAsyncBackend backend, String... messages) throws InterruptedException {
+        Thread thread = new Thread(() -> {
+            for (String message : messages) {
+                submit(backend, message, false);
+            }
+        });
+        thread.start();
+        thread.join();
+    }
+
+    /** 在 {@code producers} 个线程上同时执行 {@code task}，参数为线程序号 */
+    private static void runConcurrently(int producers, IntConsumer task) throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            int producer = p;
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                task.accept(producer);
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+    }
+
+    private static List<String> drain(AkkaAsyncBackend backend) {
+        return drain(backend, 0);
+    }
+
+    private static List<String> drain(AkkaAsyncBackend backend, int index) {
+        List<String> messages = new ArrayList<>();
+        AkkaAsyncBackend.Shard shard = backend.shard(index);
+        AsyncDelivery delivery;
+        while ((delivery = backend.poll(shard)) != null) {
+            messages.add(delivery.message());
+        }
+        assertThat(shard.isEmpty(), is(true));
+        return messages;
+    }
+
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2018-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.woutis.caramel.logging.async;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * Tests for {@link AsyncDeliveryPool}.
+ *
+ * @author Kweny
+ * @since 0.0.1
+ */
+class AsyncDeliveryPoolTests {
+
+    @Test
+    void capacityIsRoundedUpToPowerOfTwo() {
+        assertThat(new AsyncDeliveryPool(1).capacity(), is(2));
+        assertThat(new AsyncDeliveryPool(1000).capacity(), is(1024));
+        assertThat(new AsyncDeliveryPool(1024).capacity(), is(1024));
+    }
+
+    @Test
+    void releasedInstanceIsClearedAndReused() {
+        AsyncDeliveryPool pool = new AsyncDeliveryPool(4);
+        AsyncDelivery delivery = pool.acquire().message("message");
+        pool.release(delivery);
+        assertThat(pool.size(), is(1));
+        AsyncDelivery reused = pool.acquire();
+        assertThat(reused, sameInstance(delivery));
+        assertThat(reused.message(), nullValue());
+        assertThat(pool.size(), is(0));
+    }
+
+    @Test
+    void fullPoolDropsReleasedInstances() {
+        AsyncDeliveryPool pool = new AsyncDeliveryPool(2);
+        AsyncDelivery first = AsyncDelivery.create();
+        AsyncDelivery second = AsyncDelivery.create();
+        pool.release(first);
+        pool.release(second);
+        pool.release(AsyncDelivery.create());
+        assertThat(pool.size(), is(2));
+        assertThat(pool.acquire(), sameInstance(first));
+        assertThat(pool.acquire(), sameInstance(second));
+        assertThat(pool.acquire(), not(anyOf(sameInstance(first), sameInstance(second))));
+    }
+
+    @Test
+    void instanceReleasedByConsumerIsAcquiredByProducer() throws InterruptedException {
+        AsyncDeliveryPool pool = new AsyncDeliveryPool(16);
+        AsyncDelivery delivery = AsyncDelivery.create();
+        Thread consumer = new Thread(() -> pool.release(delivery));
+        consumer.start();
+        consumer.join();
+        assertThat(pool.acquire(), sameInstance(delivery));
+    }
+
+    /**
+     * 多个生产者取出、单个消费者归还，检查同一实例不会同时被两个生产者持有，且稳定状态下基本不再新建实例
+     */
+    @Test
+    void producersReuseWhatConsumerReleases() throws InterruptedException {
+        AsyncDeliveryPool pool = new AsyncDeliveryPool(256);
+        BlockingQueue<AsyncDelivery> handoff = new ArrayBlockingQueue<>(64);
+        Set<AsyncDelivery> inFlight = Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<>()));
+        Set<AsyncDelivery> created = Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<>()));
+        AtomicBoolean duplicated = new AtomicBoolean();
+        AtomicLong acquired = new AtomicLong();
+        int producers = 4;
+        int count = 50_000;
+
+        Thread consumer = new Thread(() -> {
+            try {
+                for (int i = 0; i < producers * count; i++) {
+                    AsyncDelivery delivery = handoff.take();
+                    inFlight.remove(delivery);
+                    pool.release(delivery);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        consumer.start();
+        Thread[] threads = new Thread[producers];
+        for (int p = 0; p < producers; p++) {
+            threads[p] = new Thread(() -> {
+                try {
+                    for (int i = 0; i < count; i++) {
+                        AsyncDelivery delivery = pool.acquire();
+                        acquired.incrementAndGet();
+                        created.add(delivery);
+                        if (!inFlight.add(delivery)) {
+                            duplicated.set(true);
+                        }
+                        handoff.put(delivery);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            threads[p].start();
+        }
+        for (Thread thread : threads) {
+            thread.join(TimeUnit.SECONDS.toMillis(30));
+        }
+        consumer.join(TimeUnit.SECONDS.toMillis(30));
+
+        assertThat(duplicated.get(), is(false));
+        assertThat(acquired.get(), is((long) producers * count));
+        // 池满时归还的实例被丢弃、池空时再新建，累计新建数会随调度波动，但绝大多数申请应复用池中的实例
+        assertThat((long) created.size(), lessThan(acquired.get() / 10));
+    }
+
+}
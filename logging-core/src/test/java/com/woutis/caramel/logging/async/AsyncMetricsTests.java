@@ -0,0 +1,229 @@
+/*
+ * Copyright 2018-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.woutis.caramel.logging.async;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.event.Level;
+
+import java.io.File;
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Tests for the counters of {@link AsyncMetrics} under each {@link OverflowPolicy}, each test runs its own
+ * {@link AsyncSystem} over a stub backend, and for the failures counted by {@link AsyncHandler}.
+ *
+ * @author Kweny
+ * @since 0.0.1
+ */
+class AsyncMetricsTests {
+
+    private static final String[] PROPERTIES = {"overflow.policy", "overflow.block-timeout", "lanes",
+            "lanes.priority.overflow.policy", "spill.file", "spill.size"};
+
+    @AfterEach
+    void clear() {
+        for (String name : PROPERTIES) {
+            System.clearProperty("caramel.logging.async." + name);
+        }
+    }
+
+    @Test
+    void enqueuedEventsAreTimed() {
+        AsyncSystem system = system("block", new StubBackend(1));
+        system.publish(system.claim(Level.INFO, null));
+
+        AsyncMetrics metrics = system.metrics();
+        assertThat(metrics.getEnqueued(), is(1L));
+        assertThat(metrics.getEnqueueLatency().getCount(), is(1L));
+        assertThat(metrics.getBlocked() + metrics.getDiscarded() + metrics.getEvicted() + metrics.getSynchronous(), is(0L));
+    }
+
+    @Test
+    void blockCountsWaitsAndTimeouts() {
+        System.setProperty("caramel.logging.async.overflow.block-timeout", "1");
+        AsyncSystem system = system("block", new StubBackend(0));
+        assertThat(system.claim(Level.INFO, null), nullValue());
+
+        assertThat(system.metrics().getBlocked(), is(1L));
+        assertThat(system.metrics().getDiscarded(), is(1L));
+    }
+
+    @Test
+    void discardCountsDiscardedEvents() {
+        AsyncSystem system = system("discard", new StubBackend(0));
+        assertThat(system.claim(Level.INFO, null), nullValue());
+        assertThat(system.claim(Level.DEBUG, null), nullValue());
+
+        assertThat(system.metrics().getDiscarded(), is(2L));
+        assertThat(system.metrics().getBlocked(), is(0L));
+    }
+
+    @Test
+    void dropOldestCountsEvictedEvents() {
+        StubBackend backend = new StubBackend(0);
+        backend.evictable.set(1);
+        AsyncSystem system = system("drop-oldest", backend);
+        assertThat(system.claim(Level.INFO, null), notNullValue());
+        assertThat(system.claim(Level.INFO, null), nullValue());
+
+        assertThat(system.metrics().getEvicted(), is(1L));
+        assertThat(system.metrics().getDiscarded(), is(1L));
+    }
+
+    @Test
+    void synchronousCountsDivertedEvents() {
+        AsyncSystem system = system("synchronous", new StubBackend(0));
+        assertThat(system.claim(Level.INFO, null).synchronous(), is(true));
+
+        assertThat(system.metrics().getSynchronous(), is(1L));
+        assertThat(system.metrics().getEnqueued(), is(0L));
+    }
+
+    @Test
+    void spillCountsSpilledEvents() throws Exception {
+        File file = File.createTempFile("caramel-async-logging-test-", ".spill");
+        file.delete();
+        System.setProperty("caramel.logging.async.spill.file", file.getPath());
+        System.setProperty("caramel.logging.async.spill.size", "1");
+        AsyncSystem system = system("spill", new StubBackend(0));
+        try {
+            AsyncDelivery delivery = system.claim(Level.INFO, null);
+            assertThat(delivery.spilled(), is(true));
+            system.publish(delivery.logger(LoggerFactory.getLogger("metrics-test")).level(Level.INFO).message("spilled"));
+
+            AsyncMetrics metrics = system.metrics();
+            assertThat(metrics.getSpilled(), is(1L));
+            assertThat(metrics.getEnqueued(), is(1L));
+            assertThat(metrics.getQueueDepth(), is(1L));
+        } finally {
+            system.shutdown(Duration.ofMillis(10));
+            file.delete();
+        }
+    }
+
+    @Test
+    void countersAddUpBothLanes() {
+        System.setProperty("caramel.logging.async.lanes", "true");
+        System.setProperty("caramel.logging.async.lanes.priority.overflow.policy", "synchronous");
+        AsyncSystem system = system("discard", new StubBackend(0));
+        assertThat(system.claim(Level.INFO, null), nullValue());
+        assertThat(system.claim(Level.ERROR, null).synchronous(), is(true));
+
+        AsyncMetrics metrics = system.metrics();
+        assertThat(metrics.getDiscarded(), is(1L));
+        assertThat(metrics.getSynchronous(), is(1L));
+        assertThat(system.overflow().synchronous(), is(0L));
+        assertThat(system.priorityOverflow().discarded(), is(0L));
+    }
+
+    @Test
+    void failedCountsHandlerErrors() {
+        AsyncMetrics metrics = AsyncSystem.instance().metrics();
+        long failed = metrics.getFailed();
+        assertThrows(IllegalStateException.class, () -> AsyncHandler.handle(failing()));
+        assertThat(metrics.getFailed(), is(failed + 1));
+
+        // 批量输出时单条日志的异常不影响其它日志
+        RecordingLogger recording = new RecordingLogger();
+        AsyncDelivery[] batch = {failing(), AsyncDelivery.create(recording.logger(), Level.INFO).message("kept")};
+        AsyncHandler.handleBatch(batch, batch.length);
+        assertThat(metrics.getFailed(), is(failed + 2));
+        assertThat(recording.size(), is(1));
+    }
+
+    private static AsyncSystem system(String policy, AsyncBackend backend) {
+        System.setProperty("caramel.logging.async.overflow.policy", policy);
+        return new AsyncSystem(backend);
+    }
+
+    /** logger 输出时抛出异常的日志 */
+    private static AsyncDelivery failing() {
+        Logger logger = (Logger) Proxy.newProxyInstance(Logger.class.getClassLoader(), new Class<?>[] {Logger.class}, (proxy, method, args) -> {
+            if (method.getName().startsWith("is")) {
+                return true;
+            }
+            if ("getName".equals(method.getName())) {
+                return "failing";
+            }
+            throw new IllegalStateException("failing logger");
+        });
+        return AsyncDelivery.create(logger, Level.INFO).message("lost");
+    }
+
+    /**
+     * 只记录容量的引擎，{@link #free} 为剩余容量，{@link #evictable} 为可被丢弃的旧日志数量
+     */
+    private static final class StubBackend implements AsyncBackend {
+
+        final AtomicInteger free;
+        final AtomicInteger evictable = new AtomicInteger();
+
+        StubBackend(int free) {
+            this.free = new AtomicInteger(free);
+        }
+
+        @Override
+        public String name() {
+            return "stub";
+        }
+
+        @Override
+        public void start() {}
+
+        @Override
+        public AsyncDelivery claim() {
+            return this.free.getAndUpdate(free -> Math.max(0, free - 1)) > 0 ? AsyncDelivery.create() : null;
+        }
+
+        @Override
+        public boolean evictOldest() {
+            if (this.evictable.getAndUpdate(evictable -> Math.max(0, evictable - 1)) > 0) {
+                this.free.incrementAndGet();
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public void submit(AsyncDelivery delivery) {}
+
+        @Override
+        public long pending() {
+            return 0;
+        }
+
+        @Override
+        public boolean flush(Duration timeout) {
+            return true;
+        }
+
+        @Override
+        public void shutdown(Duration timeout) {}
+
+    }
+
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright 2018-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.woutis.caramel.logging.async;
+
+import com.woutis.caramel.logging.LoggingContext;
+import com.woutis.caramel.logging.ThreadSnapshot;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.event.Level;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * Tests for {@link AsyncOverflow}, each test configures its own property prefix.
+ *
+ * @author Kweny
+ * @since 0.0.1
+ */
+class AsyncOverflowTests {
+
+    private static final String PREFIX = "caramel.logging.test.overflow";
+
+    @AfterEach
+    void clear() {
+        for (String name : new String[] {"policy", "block-timeout", "discard-level"}) {
+            System.clearProperty(PREFIX + "." + name);
+        }
+        LoggingContext._unbind();
+    }
+
+    @Test
+    void parsePolicy() {
+        assertThat(AsyncOverflow.parsePolicy("drop-oldest"), is(OverflowPolicy.DROP_OLDEST));
+        assertThat(AsyncOverflow.parsePolicy(" DROP_OLDEST "), is(OverflowPolicy.DROP_OLDEST));
+        assertThat(AsyncOverflow.parsePolicy("Spill"), is(OverflowPolicy.SPILL));
+        assertThat(AsyncOverflow.parsePolicy("unknown"), is(OverflowPolicy.BLOCK));
+        assertThat(AsyncOverflow.parsePolicy(null), is(OverflowPolicy.BLOCK));
+    }
+
+    @Test
+    void parseSeverity() {
+        assertThat(AsyncOverflow.parseSeverity("warn", 0), is(AsyncOverflow.severity(Level.WARN, null)));
+        assertThat(AsyncOverflow.parseSeverity("350", 0), is(350));
+        assertThat(AsyncOverflow.parseSeverity(" ", 7), is(7));
+        assertThat(AsyncOverflow.parseSeverity("unknown", 7), is(7));
+    }
+
+    @Test
+    void blockWaitsForFreeCapacity() throws InterruptedException {
+        AsyncOverflow overflow = overflow("block", 0);
+        StubBackend backend = new StubBackend(0);
+        Thread releaser = new Thread(() -> {
+            sleep(50);
+            backend.free.incrementAndGet();
+        });
+        releaser.start();
+        AsyncDelivery delivery = overflow.overflow(backend, Level.INFO, null);
+        releaser.join();
+        assertThat(delivery, notNullValue());
+        assertThat(delivery.synchronous(), is(false));
+        assertThat(overflow.blocked(), is(1L));
+        assertThat(overflow.discarded(), is(0L));
+    }
+
+    @Test
+    void blockDiscardsAfterTimeout() {
+        AsyncOverflow overflow = overflow("block", 50);
+        long start = System.nanoTime();
+        assertThat(overflow.overflow(new StubBackend(0), Level.ERROR, null), nullValue());
+        assertThat(System.nanoTime() - start, greaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(50)));
+        assertThat(overflow.blocked(), is(1L));
+        assertThat(overflow.discarded(), is(1L));
+    }
+
+    @Test
+    void blockTimeoutIsFiniteByDefault() {
+        System.setProperty(PREFIX + ".policy", "block");
+        AsyncOverflow overflow = new AsyncOverflow(false, PREFIX);
+        long start = System.nanoTime();
+        assertThat(overflow.overflow(new StubBackend(0), Level.ERROR, null), nullValue());
+        assertThat(System.nanoTime() - start, lessThan(TimeUnit.SECONDS.toNanos(10)));
+        assertThat(overflow.discarded(), is(1L));
+    }
+
+    @Test
+    void blockNeverWaitsOnHandlingThread() {
+        AsyncOverflow overflow = overflow("block", 0);
+        LoggingContext._bind(Collections.emptyMap(), null, null, ThreadSnapshot.current());
+        AsyncDelivery delivery = overflow.overflow(new StubBackend(0), Level.INFO, null);
+        assertThat(delivery, notNullValue());
+        assertThat(delivery.synchronous(), is(true));
+        assertThat(overflow.synchronous(), is(1L));
+        assertThat(overflow.blocked(), is(0L));
+    }
+
+    @Test
+    void discardDropsLessSevereEvents() {
+        System.setProperty(PREFIX + ".discard-level", "warn");
+        AsyncOverflow overflow = overflow("discard", 50);
+        assertThat(overflow.overflow(new StubBackend(1), Level.WARN, null), nullValue());
+        assertThat(overflow.overflow(new StubBackend(1), Level.DEBUG, null), nullValue());
+        assertThat(overflow.discarded(), is(2L));
+        assertThat(overflow.overflow(new StubBackend(1), Level.ERROR, null), notNullValue());
+        assertThat(overflow.blocked(), is(1L));
+    }
+
+    @Test
+    void dropOldestEvictsQueuedEvents() {
+        AsyncOverflow overflow = overflow("drop_oldest", 0);
+        StubBackend backend = new StubBackend(0);
+        backend.evictable.set(1);
+        assertThat(overflow.overflow(backend, Level.INFO, null), notNullValue());
+        assertThat(overflow.evicted(), is(1L));
+        assertThat(overflow.overflow(backend, Level.INFO, null), nullValue());
+        assertThat(overflow.discarded(), is(1L));
+    }
+
+    @Test
+    void synchronousAndSpill() {
+        AsyncDelivery synchronous = overflow("synchronous", 0).overflow(new StubBackend(0), Level.INFO, null);
+        assertThat(synchronous.synchronous(), is(true));
+        AsyncDelivery spilled = overflow("spill", 0).overflow(new StubBackend(0), Level.INFO, null);
+        assertThat(spilled.spilled(), is(true));
+    }
+
+    private static AsyncOverflow overflow(String policy, int blockTimeoutMillis) {
+        System.setProperty(PREFIX + ".policy", policy);
+        System.setProperty(PREFIX + ".block-timeout", String.valueOf(blockTimeoutMillis));
+        return new AsyncOverflow(false, PREFIX);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 只记录容量的引擎，{@link #free} 为剩余容量，{@link #evictable} 为可被丢弃的旧日志数量
+     */
+    private static final class StubBackend implements AsyncBackend {
+
+        final AtomicInteger free;
+        final AtomicInteger evictable = new AtomicInteger();
+
+        StubBackend(int free) {
+            this.free = new AtomicInteger(free);
+        }
+
+        @Override
+        public String name() {
+            return "stub";
+        }
+
+        @Override
+        public void start() {}
+
+        @Override
+        public AsyncDelivery claim() {
+            return this.free.getAndUpdate(free -> Math.max(0, free - 1)) > 0 ? AsyncDelivery.create() : null;
+        }
+
+        @Override
+        public boolean evictOldest() {
+            if (this.evictable.getAndUpdate(evictable -> Math.max(0, evictable - 1)) > 0) {
+                this.free.incrementAndGet();
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public void submit(AsyncDelivery delivery) {}
+
+        @Override
+        public long pending() {
+            return 0;
+        }
+
+        @Override
+        public boolean flush(Duration timeout) {
+            return true;
+        }
+
+        @Override
+        public void shutdown(Duration timeout) {}
+
+    }
+
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2018-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.woutis.caramel.logging.async;
+
+import org.junit.jupiter.api.Test;
+import org.slf4j.event.Level;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * Tests for {@link AsyncRingBuffer}.
+ *
+ * @author Kweny
+ * @since 0.0.1
+ */
+class AsyncRingBufferTests {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(30);
+
+    @Test
+    void capacityIsRoundedUpToPowerOfTwo() {
+        assertThat(new AsyncRingBuffer(1).capacity(), is(2));
+        assertThat(new AsyncRingBuffer(5).capacity(), is(8));
+        assertThat(new AsyncRingBuffer(8).capacity(), is(8));
+    }
+
+    @Test
+    void claimFailsWhenFull() {
+        AsyncRingBuffer ring = new AsyncRingBuffer(4);
+        for (int i = 0; i < 4; i++) {
+            AsyncDelivery slot = ring.tryClaim();
+            assertThat(slot, notNullValue());
+            assertThat(slot.sequence, is((long) i));
+        }
+        assertThat(ring.tryClaim(), nullValue());
+        assertThat(ring.claimedSequence(), is(3L));
+        assertThat(ring.consumedSequence(), is(-1L));
+    }
+
+    @Test
+    void slotsAreReusedAfterConsumption() {
+        RecordingLogger recording = new RecordingLogger();
+        AsyncRingBuffer ring = new AsyncRingBuffer(4);
+        ring.start("ring-test-reuse");
+        try {
+            AsyncDelivery first = publish(ring, recording, 0);
+            assertThat(AsyncSystem.awaitUntil(() -> ring.consumedSequence() == 0, TIMEOUT), is(true));
+            assertThat(first.message(), nullValue());
+            assertThat(first.logger(), nullValue());
+            for (int i = 1; i < 4; i++) {
+                publish(ring, recording, i);
+            }
+            assertThat(publish(ring, recording, 4), sameInstance(first));
+            assertThat(recording.await(5, TIMEOUT), is(true));
+        } finally {
+            ring.stop();
+        }
+    }
+
+    @Test
+    void singleProducerKeepsOrder() {
+        for (WaitStrategy waitStrategy : WaitStrategy.values()) {
+            assertDelivered(new AsyncRingBuffer(64, 1, waitStrategy, 50_000L), 1, 5_000);
+        }
+    }
+
+    @Test
+    void multipleProducersKeepPerProducerOrder() {
+        for (WaitStrategy waitStrategy : WaitStrategy.values()) {
+            assertDelivered(new AsyncRingBuffer(64, 1, waitStrategy, 50_000L), 4, 5_000);
+        }
+    }
+
+    @Test
+    void batchesKeepOrder() {
+        assertDelivered(new AsyncRingBuffer(64, 16), 4, 5_000);
+    }
+
+    /**
+     * {@code producers} 个线程各发布 {@code count} 条日志，缓冲区满时重试，检查全部送达且每个线程内的顺序不变
+     */
+    private static void assertDelivered(AsyncRingBuffer ring, int producers, int count) {
+        RecordingLogger recording = new RecordingLogger();
+        ring.start("ring-test-consumer");
+        ExecutorService executor = Executors.newFixedThreadPool(producers);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            for (int p = 0; p < producers; p++) {
+                int producer = p;
+                executor.execute(() -> {
+                    awaitQuietly(start);
+                    for (int i = 0; i < count; i++) {
+                        publish(ring, recording, producer * count + i);
+                    }
+                });
+            }
+            start.countDown();
+            assertThat(recording.await(producers * count, TIMEOUT), is(true));
+            assertThat(AsyncSystem.awaitUntil(() -> ring.consumedSequence() == ring.claimedSequence(), TIMEOUT), is(true));
+
+            List<RecordingLogger.Entry> entries = recording.entries();
+            assertThat(entries, hasSize(producers * count));
+            int[] last = new int[producers];
+            Arrays.fill(last, -1);
+            for (RecordingLogger.Entry entry : entries) {
+                assertThat(entry.thread, is("ring-test-consumer"));
+                int value = (Integer) entry.arguments[0];
+                int producer = value / count;
+                assertThat(value % count, is(last[producer] + 1));
+                last[producer] = value % count;
+            }
+        } finally {
+            executor.shutdownNow();
+            ring.stop();
+        }
+    }
+
+    private static AsyncDelivery publish(AsyncRingBuffer ring, RecordingLogger recording, int value) {
+        AsyncDelivery slot;
+        while ((slot = ring.tryClaim()) == null) {
+            Thread.yield();
+        }
+        slot.logger(recording.logger()).level(Level.INFO).message("value {}").arguments(value);
+        ring.publish(slot);
+        return slot;
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
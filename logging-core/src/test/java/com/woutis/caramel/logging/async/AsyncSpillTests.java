@@ -0,0 +1,318 @@
+/*
+ * Copyright 2018-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.woutis.caramel.logging.async;
+
+import com.woutis.caramel.logging.ContextMap;
+import com.woutis.caramel.logging.ThreadSnapshot;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MarkerFactory;
+import org.slf4j.event.Level;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * Tests for {@link AsyncSpill}: the default file name, the record codec, wrapping around the end of the file,
+ * recovering a file left by a previous run and replaying into the shard of the producer thread.
+ *
+ * @author Kweny
+ * @since 0.0.1
+ */
+class AsyncSpillTests {
+
+    private static final int SIZE = 16 * 1024;
+
+    private final List<AsyncSpill> opened = new ArrayList<>();
+    private File file;
+
+    @AfterEach
+    void clear() {
+        for (AsyncSpill spill : this.opened) {
+            spill.close();
+        }
+        if (this.file != null) {
+            this.file.delete();
+        }
+    }
+
+    @Test
+    void defaultNameIdentifiesTheApplication() {
+        String name = AsyncSpill.defaultName("com.example.OrderService --port 8080", "/srv/orders");
+        assertThat(name, startsWith("caramel-async-logging-OrderService-"));
+        assertThat(name, endsWith(".spill"));
+        assertThat(AsyncSpill.defaultName("com.example.OrderService", "/srv/orders"), is(name));
+        assertThat(AsyncSpill.defaultName("com.example.OrderService", "/srv/other"), not(name));
+        assertThat(AsyncSpill.defaultName("com.example.BillingService", "/srv/orders"), not(name));
+
+        assertThat(AsyncSpill.defaultName("/opt/apps/billing-1.0.jar", "/"), startsWith("caramel-async-logging-billing-10-"));
+        assertThat(AsyncSpill.defaultName(null, null), matchesPattern("caramel-async-logging-[0-9a-f]+\\.spill"));
+    }
+
+    @Test
+    void recordRoundTrip() throws Exception {
+        AsyncSpill spill = open(1024 * 1024);
+        ThreadSnapshot thread = ThreadSnapshot.of(42L, "producer", 7, "workers");
+        StackTraceElement location = new StackTraceElement("com.example.Caller", "call", "Caller.java", 12);
+        IllegalStateException cause = new IllegalStateException("inner");
+        AsyncDelivery delivery = AsyncDelivery.create(LoggerFactory.getLogger("spill-test"), Level.WARN)
+                .marker(MarkerFactory.getMarker("AUDIT"))
+                .message("order {} of {}")
+                .arguments(1, "alice", new RuntimeException("outer", cause))
+                .context(ContextMap.empty().with("traceId", "t-1").with("count", 3))
+                .sourceLocation(location)
+                .sourceThread(thread);
+        delivery.priority = true;
+        assertThat(spill.append(delivery), is(true));
+
+        Collector collector = new Collector(Integer.MAX_VALUE);
+        spill.start(() -> collector, () -> 0L);
+        assertThat(spill.await(Duration.ofSeconds(10)), is(true));
+
+        assertThat(collector.deliveries, hasSize(1));
+        AsyncDelivery replayed = collector.deliveries.get(0);
+        assertThat(replayed.priority, is(true));
+        assertThat(replayed.level(), is(Level.WARN));
+        assertThat(replayed.logger().getName(), is("spill-test"));
+        assertThat(replayed.marker().getName(), is("AUDIT"));
+        assertThat(replayed.message(), is("order 1 of alice"));
+        assertThat(replayed.context().get("traceId"), is("t-1"));
+        assertThat(replayed.context().get("count"), is("3"));
+        assertThat(replayed.sourceLocation(), is(location));
+        assertThat(replayed.sourceThread().id(), is(42L));
+        assertThat(replayed.sourceThread().name(), is("producer"));
+        assertThat(replayed.sourceThread().group(), is("workers"));
+
+        assertThat(replayed.thrown(), instanceOf(AsyncSpill.SpilledThrowable.class));
+        AsyncSpill.SpilledThrowable thrown = (AsyncSpill.SpilledThrowable) replayed.thrown();
+        assertThat(thrown.className(), is(RuntimeException.class.getName()));
+        assertThat(thrown.getMessage(), is("outer"));
+        assertThat(thrown.getStackTrace().length, greaterThan(0));
+        assertThat(thrown.getCause().toString(), is(IllegalStateException.class.getName() + ": inner"));
+    }
+
+    @Test
+    void wrapsAroundTheEndOfTheFile() throws Exception {
+        AsyncSpill spill = open();
+        Collector collector = new Collector(0);
+        spill.start(() -> collector, () -> 0L);
+
+        int sequence = 0;
+        // 每条记录约 1KB，文件约能容纳 15 条
+        for (int i = 0; i < 12; i++) {
+            assertThat(spill.append(record(sequence++)), is(true));
+        }
+        collector.permits.set(6);
+        awaitPending(spill, 6);
+        // 文件末尾只能再容纳少数几条，之后从文件开头继续写入
+        for (int i = 0; i < 6; i++) {
+            assertThat(spill.append(record(sequence++)), is(true));
+        }
+        collector.permits.set(Integer.MAX_VALUE);
+        assertThat(spill.await(Duration.ofSeconds(10)), is(true));
+
+        assertThat(collector.sequences(), is(range(sequence)));
+        assertThat(spill.rejected(), is(0L));
+    }
+
+    @Test
+    void rejectsWhenFull() throws Exception {
+        AsyncSpill spill = open();
+        int appended = 0;
+        while (spill.append(record(appended))) {
+            appended++;
+        }
+        assertThat(appended, greaterThan(0));
+        assertThat(spill.pending(), is(appended));
+        assertThat(spill.rejected(), is(1L));
+    }
+
+    @Test
+    void recoversEventsLeftByThePreviousRun() throws Exception {
+        AsyncSpill first = open();
+        for (int i = 0; i < 5; i++) {
+            assertThat(first.append(record(i)), is(true));
+        }
+        first.close();
+        this.opened.remove(first);
+
+        AsyncSpill second = open();
+        assertThat(second.active(), is(true));
+        assertThat(second.pending(), is(5));
+        Collector collector = new Collector(Integer.MAX_VALUE);
+        second.start(() -> collector, () -> 0L);
+        assertThat(second.await(Duration.ofSeconds(10)), is(true));
+        assertThat(collector.sequences(), is(range(5)));
+    }
+
+    @Test
+    void replayedEventsStayOnTheShardOfTheirProducer() throws Exception {
+        System.setProperty("caramel.logging.async.shards", "8");
+        AkkaAsyncBackend backend;
+        try {
+            backend = new AkkaAsyncBackend();
+        } finally {
+            System.clearProperty("caramel.logging.async.shards");
+        }
+        AsyncSpill spill = open(1024 * 1024);
+        CountDownLatch replayed = new CountDownLatch(1);
+        List<Thread> producers = new ArrayList<>();
+        for (int p = 0; p < 2; p++) {
+            String name = "producer-" + p;
+            Thread producer = new Thread(() -> {
+                for (int i = 0; i < 3; i++) {
+                    spill.append(AsyncDelivery.create(LoggerFactory.getLogger("spill-test"), Level.INFO)
+                            .message(name + ":" + i)
+                            .sourceThread(ThreadSnapshot.current()));
+                }
+                try {
+                    replayed.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                // 回放完成后同一线程的新日志不能超过它之前被溢出的日志
+                backend.submit(backend.claim().message(name + ":new"));
+            }, name);
+            producers.add(producer);
+            producer.start();
+        }
+        awaitPending(spill, 6);
+        spill.start(() -> backend, () -> 0L);
+        assertThat(spill.await(Duration.ofSeconds(10)), is(true));
+        replayed.countDown();
+        for (Thread producer : producers) {
+            producer.join();
+        }
+
+        for (Thread producer : producers) {
+            AkkaAsyncBackend.Shard shard = backend.shard(AsyncSharding.ofThread(producer.getId(), 8));
+            List<String> messages = new ArrayList<>();
+            AsyncDelivery delivery;
+            while ((delivery = backend.poll(shard)) != null) {
+                if (delivery.message().startsWith(producer.getName() + ":")) {
+                    messages.add(delivery.message().substring(producer.getName().length() + 1));
+                }
+            }
+            assertThat(messages, contains("0", "1", "2", "new"));
+        }
+    }
+
+    private AsyncSpill open() throws IOException {
+        return open(SIZE);
+    }
+
+    private AsyncSpill open(int size) throws IOException {
+        if (this.file == null) {
+            this.file = File.createTempFile("caramel-async-logging-test-", ".spill");
+            this.file.delete();
+        }
+        AsyncSpill spill = new AsyncSpill(this.file, size);
+        this.opened.add(spill);
+        return spill;
+    }
+
+    private static AsyncDelivery record(int sequence) {
+        char[] padding = new char[1000];
+        Arrays.fill(padding, 'x');
+        return AsyncDelivery.create(LoggerFactory.getLogger("spill-test"), Level.INFO)
+                .message(sequence + ":" + new String(padding));
+    }
+
+    private static void awaitPending(AsyncSpill spill, int pending) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (spill.pending() != pending && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertThat(spill.pending(), is(pending));
+    }
+
+    private static List<Integer> range(int count) {
+        List<Integer> range = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            range.add(i);
+        }
+        return range;
+    }
+
+    /** 收集回放日志的引擎，{@link #permits} 限制可以申请的投递对象数量 */
+    private static final class Collector implements AsyncBackend {
+
+        final AtomicInteger permits;
+        final List<AsyncDelivery> deliveries = Collections.synchronizedList(new ArrayList<>());
+
+        Collector(int permits) {
+            this.permits = new AtomicInteger(permits);
+        }
+
+        List<Integer> sequences() {
+            List<Integer> sequences = new ArrayList<>();
+            synchronized (this.deliveries) {
+                for (AsyncDelivery delivery : this.deliveries) {
+                    String message = delivery.message();
+                    sequences.add(Integer.parseInt(message.substring(0, message.indexOf(':'))));
+                }
+            }
+            return sequences;
+        }
+
+        @Override
+        public String name() {
+            return "collector";
+        }
+
+        @Override
+        public void start() {}
+
+        @Override
+        public AsyncDelivery claim() {
+            return this.permits.getAndUpdate(permits -> Math.max(0, permits - 1)) > 0 ? AsyncDelivery.create() : null;
+        }
+
+        @Override
+        public void submit(AsyncDelivery delivery) {
+            this.deliveries.add(delivery);
+        }
+
+        @Override
+        public long pending() {
+            return 0;
+        }
+
+        @Override
+        public boolean flush(Duration timeout) {
+            return true;
+        }
+
+        @Override
+        public void shutdown(Duration timeout) {}
+
+    }
+
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2018-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.woutis.caramel.logging.async;
+
+import org.junit.jupiter.api.Test;
+import org.slf4j.event.Level;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * Tests for the flush and shutdown of {@link AsyncSystem}, each test runs its own instance over a stub backend.
+ *
+ * @author Kweny
+ * @since 0.0.1
+ */
+class AsyncSystemTests {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(10);
+
+    @Test
+    void flushReportsWhetherEverythingWasDelivered() {
+        StubBackend backend = new StubBackend();
+        AsyncSystem system = new AsyncSystem(backend);
+        backend.pending.set(3);
+        assertThat(system.flush(Duration.ofMillis(10)), is(false));
+
+        backend.pending.set(0);
+        assertThat(system.flush(Duration.ofMillis(10)), is(true));
+    }
+
+    @Test
+    void shutdownReturnsThePendingCount() {
+        StubBackend backend = new StubBackend();
+        AsyncSystem system = new AsyncSystem(backend);
+        backend.pending.set(3);
+
+        assertThat(system.shutdown(Duration.ofMillis(10)), is(3L));
+        assertThat(backend.stopped, is(true));
+        assertThat(system.isTerminated(), is(true));
+        // 重复调用返回同样的数量，停止后 flush 不再等待
+        assertThat(system.shutdown(Duration.ofMillis(10)), is(3L));
+        assertThat(system.flush(Duration.ofMillis(10)), is(true));
+    }
+
+    @Test
+    void eventsClaimedBeforeShutdownAreWrittenInline() {
+        RecordingLogger recording = new RecordingLogger();
+        StubBackend backend = new StubBackend();
+        AsyncSystem system = new AsyncSystem(backend);
+        AsyncDelivery delivery = system.claim(Level.INFO, null);
+        assertThat(delivery.synchronous(), is(false));
+
+        system.shutdown(TIMEOUT);
+        system.publish(delivery.logger(recording.logger()).level(Level.INFO).message("late"));
+
+        assertThat(backend.submitted, is(empty()));
+        assertThat(recording.size(), is(1));
+        assertThat(recording.entries().get(0).thread, is(Thread.currentThread().getName()));
+        assertThat(system.claim(Level.INFO, null).synchronous(), is(true));
+    }
+
+    @Test
+    void shutdownWaitsForEventsBeingSubmitted() throws InterruptedException {
+        RecordingLogger recording = new RecordingLogger();
+        StubBackend backend = new StubBackend();
+        backend.blocking = new CountDownLatch(1);
+        AsyncSystem system = new AsyncSystem(backend);
+        AsyncDelivery delivery = system.claim(Level.INFO, null);
+        Thread producer = new Thread(() -> system.publish(delivery.logger(recording.logger()).level(Level.INFO).message("in flight")));
+        producer.start();
+        assertThat(backend.entered.await(10, TimeUnit.SECONDS), is(true));
+
+        Thread stopper = new Thread(() -> system.shutdown(TIMEOUT));
+        stopper.start();
+        stopper.join(100);
+        // 提交尚未完成，引擎不能停止
+        assertThat(backend.stopped, is(false));
+
+        backend.blocking.countDown();
+        producer.join();
+        stopper.join();
+        assertThat(backend.submitted, contains(delivery));
+        assertThat(backend.stoppedAfterSubmit, is(true));
+    }
+
+    /** 不处理日志的引擎，记录提交的日志，{@link #pending} 由测试设置 */
+    private static final class StubBackend implements AsyncBackend {
+
+        final AtomicLong pending = new AtomicLong();
+        final List<AsyncDelivery> submitted = new CopyOnWriteArrayList<>();
+        final CountDownLatch entered = new CountDownLatch(1);
+        volatile CountDownLatch blocking;
+        volatile boolean stopped;
+        volatile boolean stoppedAfterSubmit;
+
+        @Override
+        public String name() {
+            return "stub";
+        }
+
+        @Override
+        public void start() {}
+
+        @Override
+        public AsyncDelivery claim() {
+            return AsyncDelivery.create();
+        }
+
+        @Override
+        public void submit(AsyncDelivery delivery) {
+            this.entered.countDown();
+            CountDownLatch blocking = this.blocking;
+            if (blocking != null) {
+                try {
+                    blocking.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            this.submitted.add(delivery);
+        }
+
+        @Override
+        public long pending() {
+            return this.pending.get();
+        }
+
+        @Override
+        public boolean flush(Duration timeout) {
+            return AsyncSystem.awaitUntil(() -> this.pending.get() == 0, timeout);
+        }
+
+        @Override
+        public void shutdown(Duration timeout) {
+            this.stoppedAfterSubmit = !this.submitted.isEmpty();
+            this.stopped = true;
+        }
+
+    }
+
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2018-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.woutis.caramel.logging.async;
+
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * Tests for the bucket and percentile math of {@link LatencyHistogram}.
+ *
+ * @author Kweny
+ * @since 0.0.1
+ */
+class LatencyHistogramTests {
+
+    @Test
+    void smallValuesHaveTheirOwnBucket() {
+        for (int value = 0; value < 8; value++) {
+            assertThat(LatencyHistogram.index(value), is(value));
+            assertThat(LatencyHistogram.upperBound(value), is((long) value));
+        }
+    }
+
+    @Test
+    void bucketsContainTheirValuesWithinOneEighth() {
+        int previous = -1;
+        for (int exponent = 3; exponent < 63; exponent++) {
+            for (long value : new long[] {(1L << exponent) - 1, 1L << exponent, (1L << exponent) + 1, 3L << (exponent - 1)}) {
+                int index = LatencyHistogram.index(value);
+                long upper = LatencyHistogram.upperBound(index);
+                // 值落在 (上一个桶的上界, 当前桶的上界] 之间，上界的相对误差不超过 1/8
+                assertThat(upper, greaterThanOrEqualTo(value));
+                assertThat(LatencyHistogram.upperBound(index - 1), lessThan(value));
+                assertThat(upper - value, lessThanOrEqualTo(value / 8));
+                assertThat(index, greaterThanOrEqualTo(previous));
+                previous = index;
+            }
+        }
+        assertThat(LatencyHistogram.upperBound(LatencyHistogram.index(Long.MAX_VALUE)), is(Long.MAX_VALUE));
+    }
+
+    @Test
+    void emptySnapshotIsZero() {
+        LatencySnapshot snapshot = new LatencyHistogram().snapshot();
+        assertThat(snapshot.getCount(), is(0L));
+        assertThat(snapshot.getMean(), is(0L));
+        assertThat(snapshot.getMax(), is(0L));
+        assertThat(snapshot.getP50(), is(0L));
+        assertThat(snapshot.getP999(), is(0L));
+    }
+
+    @Test
+    void percentilesOfAUniformRange() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int value = 1; value <= 1000; value++) {
+            histogram.record(value);
+        }
+        LatencySnapshot snapshot = histogram.snapshot();
+        assertThat(snapshot.getCount(), is(1000L));
+        assertThat(snapshot.getMean(), is(500L));
+        assertThat(snapshot.getMax(), is(1000L));
+        // 百分位取所在桶的上界，不超过最大值
+        assertThat(snapshot.getP50(), is(LatencyHistogram.upperBound(LatencyHistogram.index(500))));
+        assertThat(snapshot.getP90(), is(LatencyHistogram.upperBound(LatencyHistogram.index(900))));
+        assertThat(snapshot.getP99(), is(Math.min(LatencyHistogram.upperBound(LatencyHistogram.index(990)), 1000L)));
+        assertThat(snapshot.getP999(), allOf(greaterThanOrEqualTo(999L), lessThanOrEqualTo(1000L)));
+    }
+
+    @Test
+    void percentilesNeverExceedTheMax() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(1000);
+        LatencySnapshot snapshot = histogram.snapshot();
+        assertThat(LatencyHistogram.upperBound(LatencyHistogram.index(1000)), greaterThan(1000L));
+        assertThat(snapshot.getP50(), is(1000L));
+        assertThat(snapshot.getP999(), is(1000L));
+    }
+
+    @Test
+    void tailPercentilesSeeOutliers() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 990; i++) {
+            histogram.record(100);
+        }
+        for (int i = 0; i < 10; i++) {
+            histogram.record(1_000_000);
+        }
+        LatencySnapshot snapshot = histogram.snapshot();
+        assertThat(snapshot.getP50(), is(LatencyHistogram.upperBound(LatencyHistogram.index(100))));
+        assertThat(snapshot.getP99(), is(LatencyHistogram.upperBound(LatencyHistogram.index(100))));
+        assertThat(snapshot.getP999(), is(1_000_000L));
+        assertThat(snapshot.getMean(), is((990 * 100L + 10 * 1_000_000L) / 1000));
+    }
+
+    @Test
+    void negativeValuesCountAsZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        LatencySnapshot snapshot = histogram.snapshot();
+        assertThat(snapshot.getCount(), is(1L));
+        assertThat(snapshot.getMax(), is(0L));
+        assertThat(snapshot.getP50(), is(0L));
+    }
+
+}
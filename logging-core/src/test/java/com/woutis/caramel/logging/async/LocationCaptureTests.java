@@ -0,0 +1,71 @@
+/*
+ * Copyright 2018-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.woutis.caramel.logging.async;
+
+import com.woutis.caramel.logging.LoggingContext;
+import com.woutis.caramel.logging.ThreadSnapshot;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * Tests for {@link LocationCapture}.
+ *
+ * @author Kweny
+ * @since 0.0.1
+ */
+class LocationCaptureTests {
+
+    @AfterEach
+    void unbind() {
+        LoggingContext._unbind();
+    }
+
+    @Test
+    void parseMode() {
+        assertThat(LocationCapture.parseMode(" caller "), is(LocationMode.CALLER));
+        assertThat(LocationCapture.parseMode("FULL"), is(LocationMode.FULL));
+        assertThat(LocationCapture.parseMode("unknown"), nullValue());
+        assertThat(LocationCapture.parseMode(null), nullValue());
+    }
+
+    @Test
+    void notDeferredOnCallerThread() {
+        assertThat(LocationCapture.deferred(), is(false));
+        LoggingContext._bind(Collections.emptyMap(), null, null, ThreadSnapshot.current());
+        assertThat(LocationCapture.deferred(), is(false));
+    }
+
+    @Test
+    void deferredOnConsumerThread() {
+        ThreadSnapshot producer = ThreadSnapshot.of(Thread.currentThread().getId() + 1, "producer", Thread.NORM_PRIORITY, "main");
+        LoggingContext._bind(Collections.emptyMap(), null, null, producer);
+        assertThat(LocationCapture.deferred(), is(true));
+    }
+
+    @Test
+    void captureFollowsMode() {
+        assertThat(LocationCapture.captureLocation(LocationMode.OFF), nullValue());
+        assertThat(LocationCapture.captureStackTrace(LocationMode.CALLER), nullValue());
+        assertThat(LocationCapture.captureStackTrace(LocationMode.FULL), notNullValue());
+    }
+
+}
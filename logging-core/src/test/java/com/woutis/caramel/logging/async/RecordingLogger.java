@@ -0,0 +1,94 @@
+/*
+ * Copyright 2018-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.woutis.caramel.logging.async;
+
+import com.woutis.caramel.logging.LoggingContext;
+import org.slf4j.Logger;
+import org.slf4j.Marker;
+import org.slf4j.event.Level;
+
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * SLF4J {@link Logger} for tests recording every event it receives, with all levels enabled.
+ *
+ * @author Kweny
+ * @since 0.0.1
+ */
+final class RecordingLogger {
+
+    private final ConcurrentLinkedQueue<Entry> entries = new ConcurrentLinkedQueue<>();
+    private final Logger logger = (Logger) Proxy.newProxyInstance(Logger.class.getClassLoader(), new Class<?>[] {Logger.class}, (proxy, method, args) -> {
+        String name = method.getName();
+        if (name.startsWith("is")) {
+            return true;
+        }
+        if ("getName".equals(name)) {
+            return "recording";
+        }
+        if (method.getDeclaringClass() == Object.class) {
+            return "hashCode".equals(name) ? System.identityHashCode(proxy) : "equals".equals(name) ? proxy == args[0] : "RecordingLogger";
+        }
+        int index = args[0] instanceof Marker ? 1 : 0;
+        Object[] arguments = index + 1 < args.length && args[index + 1] instanceof Object[] ? (Object[]) args[index + 1] : null;
+        this.entries.add(new Entry(Level.valueOf(name.toUpperCase(Locale.ROOT)), (String) args[index], arguments,
+                Thread.currentThread().getName(), LoggingContext.all()));
+        return null;
+    });
+
+    Logger logger() {
+        return this.logger;
+    }
+
+    List<Entry> entries() {
+        return new ArrayList<>(this.entries);
+    }
+
+    int size() {
+        return this.entries.size();
+    }
+
+    /** 等待收到 {@code count} 条日志 */
+    boolean await(int count, Duration timeout) {
+        return AsyncSystem.awaitUntil(() -> this.entries.size() >= count, timeout);
+    }
+
+    static final class Entry {
+
+        final Level level;
+        final String message;
+        final Object[] arguments;
+        final String thread;
+        final Map<String, ?> context;
+
+        Entry(Level level, String message, Object[] arguments, String thread, Map<String, ?> context) {
+            this.level = level;
+            this.message = message;
+            this.arguments = arguments;
+            this.thread = thread;
+            this.context = context;
+        }
+
+    }
+
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright 2018-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.woutis.caramel.logging.async;
+
+import org.junit.jupiter.api.Test;
+import org.slf4j.event.Level;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * Tests for {@link RingAsyncBackend}.
+ *
+ * @author Kweny
+ * @since 0.0.1
+ */
+class RingAsyncBackendTests {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(30);
+
+    @Test
+    void flushWaitsForSubmittedEvents() {
+        RecordingLogger recording = new RecordingLogger();
+        RingAsyncBackend backend = new RingAsyncBackend();
+        assertThat(backend.available(), is(true));
+        backend.start();
+        try {
+            for (int i = 0; i < 1_000; i++) {
+                publish(backend, recording, i);
+            }
+            assertThat(backend.flush(TIMEOUT), is(true));
+            assertThat(backend.pending(), is(0L));
+            assertThat(recording.size(), is(1_000));
+        } finally {
+            backend.shutdown(TIMEOUT);
+        }
+    }
+
+    @Test
+    void shardsKeepPerThreadOrder() throws InterruptedException {
+        int producers = 4;
+        int count = 5_000;
+        RecordingLogger recording = new RecordingLogger();
+        System.setProperty("caramel.logging.async.shards", "4");
+        RingAsyncBackend backend = new RingAsyncBackend();
+        try {
+            backend.start();
+        } finally {
+            System.clearProperty("caramel.logging.async.shards");
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(producers);
+        try {
+            long[] threads = new long[producers];
+            CountDownLatch start = new CountDownLatch(1);
+            for (int p = 0; p < producers; p++) {
+                int producer = p;
+                executor.execute(() -> {
+                    threads[producer] = Thread.currentThread().getId();
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int i = 0; i < count; i++) {
+                        publish(backend, recording, producer * count + i);
+                    }
+                });
+            }
+            start.countDown();
+            assertThat(recording.await(producers * count, TIMEOUT), is(true));
+            assertThat(backend.flush(TIMEOUT), is(true));
+
+            List<RecordingLogger.Entry> entries = recording.entries();
+            assertThat(entries, hasSize(producers * count));
+            int[] last = new int[producers];
+            Arrays.fill(last, -1);
+            for (RecordingLogger.Entry entry : entries) {
+                int value = (Integer) entry.arguments[0];
+                int producer = value / count;
+                // 同一线程的日志由它所在分片的消费者按发布顺序处理
+                assertThat(entry.thread, is("caramel-async-logging-ring-" + AsyncSharding.ofThread(threads[producer], 4)));
+                assertThat(value % count, is(last[producer] + 1));
+                last[producer] = value % count;
+            }
+        } finally {
+            executor.shutdownNow();
+            backend.shutdown(TIMEOUT);
+        }
+    }
+
+    @Test
+    void busySpinDeliversAfterIdle() throws InterruptedException {
+        assertDeliveredAfterIdle(WaitStrategy.BUSY_SPIN);
+    }
+
+    @Test
+    void yieldDeliversAfterIdle() throws InterruptedException {
+        assertDeliveredAfterIdle(WaitStrategy.YIELD);
+    }
+
+    @Test
+    void parkDeliversAfterIdle() throws InterruptedException {
+        assertDeliveredAfterIdle(WaitStrategy.PARK);
+    }
+
+    @Test
+    void blockingDeliversAfterIdle() throws InterruptedException {
+        assertDeliveredAfterIdle(WaitStrategy.BLOCKING);
+    }
+
+    @Test
+    void blockingWakesTheParkedConsumerOnPublish() throws InterruptedException {
+        RecordingLogger recording = new RecordingLogger();
+        RingAsyncBackend backend = start(WaitStrategy.BLOCKING);
+        try {
+            long[] latencies = new long[21];
+            for (int round = 0; round < latencies.length; round++) {
+                // 消费者空闲后设置 waiting 并停在兜底的定时唤醒上，空闲时长错开定时唤醒的周期
+                Thread.sleep(15 + round % 7);
+                long start = System.nanoTime();
+                publish(backend, recording, round);
+                long deadline = start + TIMEOUT.toNanos();
+                while (recording.size() <= round && System.nanoTime() - deadline < 0) {
+                    Thread.yield();
+                }
+                assertThat(recording.size(), is(round + 1));
+                latencies[round] = System.nanoTime() - start;
+            }
+            Arrays.sort(latencies);
+            // 发布方漏掉唤醒时消费者只能等到兜底的 10ms 定时唤醒，中位数约为 5ms
+            assertThat(latencies[latencies.length / 2], lessThan(TimeUnit.MILLISECONDS.toNanos(1)));
+        } finally {
+            backend.shutdown(TIMEOUT);
+        }
+    }
+
+    /**
+     * 每轮先让消费者空闲一段时间，再发布一批日志，检查全部按发布顺序送达
+     */
+    private static void assertDeliveredAfterIdle(WaitStrategy waitStrategy) throws InterruptedException {
+        RecordingLogger recording = new RecordingLogger();
+        RingAsyncBackend backend = start(waitStrategy);
+        try {
+            int value = 0;
+            for (int round = 0; round < 5; round++) {
+                Thread.sleep(20);
+                for (int i = 0; i < 100; i++) {
+                    publish(backend, recording, value++);
+                }
+                assertThat(waitStrategy + " round " + round, recording.await(value, TIMEOUT), is(true));
+            }
+            assertThat(backend.flush(TIMEOUT), is(true));
+            List<RecordingLogger.Entry> entries = recording.entries();
+            assertThat(entries, hasSize(value));
+            for (int i = 0; i < value; i++) {
+                assertThat(entries.get(i).arguments[0], is(i));
+            }
+        } finally {
+            backend.shutdown(TIMEOUT);
+        }
+    }
+
+    private static RingAsyncBackend start(WaitStrategy waitStrategy) {
+        System.setProperty("caramel.logging.async.wait-strategy", waitStrategy.name());
+        RingAsyncBackend backend = new RingAsyncBackend();
+        try {
+            backend.start();
+        } finally {
+            System.clearProperty("caramel.logging.async.wait-strategy");
+        }
+        return backend;
+    }
+
+    private static void publish(RingAsyncBackend backend, RecordingLogger recording, int value) {
+        AsyncDelivery delivery;
+        while ((delivery = backend.claim()) == null) {
+            Thread.yield();
+        }
+        backend.submit(delivery.logger(recording.logger()).level(Level.INFO).message("value {}").arguments(value));
+    }
+
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2018-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.woutis.caramel.logging.message;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * Tests for {@link CaramelMessageFactory}.
+ *
+ * @author Kweny
+ * @since 0.0.1
+ */
+class CaramelMessageFactoryTests {
+
+    @Test
+    void renderMatchesFormat() {
+        List<Object> nested = new ArrayList<>();
+        nested.add("a");
+        nested.add(Arrays.asList(1, null));
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("k", new int[]{1, 2});
+        Object[][] cases = {
+                {"plain", new Object[]{"x"}},
+                {"a={} b={}", new Object[]{1, "two"}},
+                {"{} {} {}", new Object[]{null, 3L, true}},
+                {"missing {} {}", new Object[]{'c'}},
+                {"extra {}", new Object[]{(short) 4, (byte) 5, "ignored"}},
+                {"escaped \\{} then {}", new Object[]{"arg"}},
+                {"double \\\\{} then {}", new Object[]{"first", "second"}},
+                {"trailing \\", new Object[]{"x"}},
+                {"trailing {", new Object[]{"x"}},
+                {"{}", new Object[]{new String[]{"a", "b"}}},
+                {"{} {}", new Object[]{map, nested}},
+                {"{}", new Object[]{new Object[]{new long[]{7L}, null}}},
+                {"{}", new Object[]{1.5d}},
+        };
+        for (Object[] c : cases) {
+            String pattern = (String) c[0];
+            Object[] args = (Object[]) c[1];
+            assertThat(pattern, CaramelMessageFactory.render(pattern, args), is(CaramelMessageFactory.format(pattern, args)));
+        }
+    }
+
+    @Test
+    void renderWithoutArgumentsReturnsPattern() {
+        assertThat(CaramelMessageFactory.render("a {}"), is("a {}"));
+        assertThat(CaramelMessageFactory.render(null, "x"), is(nullValue()));
+        assertThat(CaramelMessageFactory.render("", "x"), is(""));
+    }
+
+    @Test
+    void renderReusesBufferAcrossCalls() {
+        StringBuilder large = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            large.append('x');
+        }
+        assertThat(CaramelMessageFactory.render("{}", large.toString()).length(), is(10000));
+        assertThat(CaramelMessageFactory.render("a={}", 1), is("a=1"));
+    }
+
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2018-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.woutis.caramel.logging.propagation;
+
+import com.woutis.caramel.logging.LoggingContext;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * Tests for {@link ContextPropagation}.
+ *
+ * @author Kweny
+ * @since 0.0.1
+ */
+class ContextPropagationTests {
+
+    @AfterEach
+    void release() {
+        LoggingContext.release();
+    }
+
+    @Test
+    void asyncStagesCarryTheContext() throws Exception {
+        LoggingContext.set("request", "r-1");
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<String> future = ContextPropagation.supplyAsync(() -> {
+                    await(release);
+                    return "load:" + LoggingContext.get("request");
+                })
+                // 在上一阶段完成前注册的阶段
+                .thenApplyAsync(value -> value + ",render:" + LoggingContext.get("request"), ContextPropagation.asyncExecutor())
+                .thenApply(ContextPropagation.function(value -> value + ",store:" + LoggingContext.get("request")));
+        LoggingContext.set("request", "r-2");
+        release.countDown();
+
+        assertThat(future.get(10, TimeUnit.SECONDS), is("load:r-1,render:r-1,store:r-1"));
+    }
+
+    @Test
+    void stageAddedAfterCompletionUsesTheCallerContext() throws Exception {
+        CompletableFuture<Void> done = CompletableFuture.completedFuture(null);
+        LoggingContext.set("request", "r-3");
+        CompletableFuture<Object> future = done.thenApplyAsync(ignored -> LoggingContext.get("request"), ContextPropagation.asyncExecutor());
+        assertThat(future.get(10, TimeUnit.SECONDS), is("r-3"));
+    }
+
+    @Test
+    void wrappedExecutorRestoresTheWorkerContext() throws Exception {
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        try {
+            pool.submit(() -> LoggingContext.set("worker", true)).get(10, TimeUnit.SECONDS);
+            ExecutorService executor = ContextPropagation.wrap(pool);
+            LoggingContext.set("request", "r-4");
+
+            assertThat(executor.submit(() -> LoggingContext.get("request")).get(10, TimeUnit.SECONDS), is("r-4"));
+            assertThat(executor.submit(() -> LoggingContext.get("worker")).get(10, TimeUnit.SECONDS), is(nullValue()));
+            assertThat(pool.submit(() -> LoggingContext.get("worker")).get(10, TimeUnit.SECONDS), is(true));
+            assertThat(pool.submit(() -> LoggingContext.get("request")).get(10, TimeUnit.SECONDS), is(nullValue()));
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
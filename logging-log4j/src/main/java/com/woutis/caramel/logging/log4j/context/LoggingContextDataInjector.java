@@ -0,0 +1,109 @@
+/*
+ * Copyright 2018-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.woutis.caramel.logging.log4j.context;
+
+import com.woutis.caramel.logging.LoggingContext;
+import org.apache.logging.log4j.core.ContextDataInjector;
+import org.apache.logging.log4j.core.config.Property;
+import org.apache.logging.log4j.core.impl.ContextDataFactory;
+import org.apache.logging.log4j.core.util.ContextDataProvider;
+import org.apache.logging.log4j.status.StatusLogger;
+import org.apache.logging.log4j.util.ReadOnlyStringMap;
+import org.apache.logging.log4j.util.StringMap;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+
+/**
+ * Log4j context data injector writing {@link LoggingContext} entries into the context data of every log event.
+ *
+ * <p>Opt-in: not registered by this module, since {@code log4j2.ContextDataInjector} replaces Log4j's injector for the
+ * whole application, including the copy-on-write {@code ThreadContext} optimizations of the default ones and any
+ * injector the application configures itself. {@link LoggingContextDataProvider} already adds {@link LoggingContext}
+ * to the events through Log4j's default injector; this class saves the copies that injector makes per event and is
+ * the recommended setup for high logging rates. Enable it with the system property, or in the application's
+ * {@code log4j2.component.properties}:
+ * <pre>
+ *     log4j2.ContextDataInjector=com.woutis.caramel.logging.log4j.context.LoggingContextDataInjector
+ * </pre>
+ *
+ * <p>The context is captured on the logging thread when Log4j creates the event, so it survives Log4j's own async
+ * loggers and async appenders. Entries are put into the reusable {@link StringMap} of the event as they are, without
+ * string conversion or intermediate maps. Configuration properties and the other {@link ContextDataProvider}s
+ * (including the one for {@code ThreadContext}) are injected as Log4j does; {@link LoggingContext} wins on duplicate
+ * keys.
+ *
+ * @author Kweny
+ * @since 0.0.1
+ */
+public class LoggingContextDataInjector implements ContextDataInjector {
+
+    /** 除 {@link LoggingContextDataProvider} 以外的其它上下文提供者，由本注入器直接写入 {@link LoggingContext} */
+    private final List<ContextDataProvider> providers;
+
+    public LoggingContextDataInjector() {
+        this.providers = loadProviders();
+    }
+
+    @Override
+    public StringMap injectContextData(List<Property> properties, StringMap reusable) {
+        if (properties != null) {
+            for (int i = 0; i < properties.size(); i++) {
+                Property property = properties.get(i);
+                reusable.putValue(property.getName(), property.getValue());
+            }
+        }
+        for (int i = 0; i < this.providers.size(); i++) {
+            StringMap data = this.providers.get(i).supplyStringMap();
+            if (data != null && !data.isEmpty()) {
+                reusable.putAll(data);
+            }
+        }
+        LoggingContext.forEach(reusable::putValue);
+        return reusable;
+    }
+
+    /** 供 {@code ${ctx:key}} 等查找使用，不在日志事件的热路径上 */
+    @Override
+    public ReadOnlyStringMap rawContextData() {
+        return injectContextData(null, ContextDataFactory.createContextData());
+    }
+
+    /** Log4j 此时可能仍在初始化，只能通过 StatusLogger 报告错误 */
+    private static List<ContextDataProvider> loadProviders() {
+        List<ContextDataProvider> providers = new ArrayList<>();
+        Iterator<ContextDataProvider> iterator = ServiceLoader.load(ContextDataProvider.class, LoggingContextDataInjector.class.getClassLoader()).iterator();
+        while (true) {
+            try {
+                if (!iterator.hasNext()) {
+                    break;
+                }
+                ContextDataProvider provider = iterator.next();
+                if (!(provider instanceof LoggingContextDataProvider)) {
+                    providers.add(provider);
+                }
+            } catch (ServiceConfigurationError e) {
+                StatusLogger.getLogger().error("[Caramel Logging] Unable to load ContextDataProvider.", e);
+            }
+        }
+        return providers;
+    }
+
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2018-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.woutis.caramel.logging.log4j.context;
+
+import com.woutis.caramel.logging.LoggingContext;
+import org.apache.logging.log4j.core.impl.ContextDataFactory;
+import org.apache.logging.log4j.core.util.ContextDataProvider;
+import org.apache.logging.log4j.util.StringMap;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+/**
+ * Log4j context data provider exposing {@link LoggingContext} to Log4j's default context data injectors.
+ *
+ * <p>Registered through {@code META-INF/services}, so Log4j's default injector adds {@link LoggingContext} to the
+ * context data of every event next to {@code ThreadContext}; {@link LoggingContextDataInjector}, when opted in,
+ * writes the context itself and skips this provider.
+ *
+ * <p>{@link #supplyContextData()} does not copy the context: it returns a read-only view over the current immutable
+ * snapshot, converting a value to a string only when Log4j reads it. Log4j's default injector still copies the view
+ * into the event (and merges providers into a {@code HashMap} of its own), so applications logging at high rates
+ * should opt in to {@link LoggingContextDataInjector}, which writes the values straight into the event's reusable
+ * {@link StringMap}.
+ *
+ * @author Kweny
+ * @since 0.0.1
+ */
+public class LoggingContextDataProvider implements ContextDataProvider {
+
+    @Override
+    public Map<String, String> supplyContextData() {
+        if (LoggingContext.emptily()) {
+            return Collections.emptyMap();
+        }
+        return new StringView(LoggingContext.replica());
+    }
+
+    /** 无 GC 模式下使用，保留原始值不转换为字符串 */
+    @Override
+    public StringMap supplyStringMap() {
+        StringMap data = ContextDataFactory.createContextData();
+        LoggingContext.forEach(data::putValue);
+        return data;
+    }
+
+    /** 上下文快照的只读视图，读取时才把值转为字符串；快照不可变，之后的修改不影响它 */
+    private static final class StringView extends AbstractMap<String, String> {
+
+        private final Map<String, ?> snapshot;
+        private Set<Entry<String, String>> entrySet;
+
+        StringView(Map<String, ?> snapshot) {
+            this.snapshot = snapshot;
+        }
+
+        @Override
+        public int size() {
+            return this.snapshot.size();
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return this.snapshot.containsKey(key);
+        }
+
+        @Override
+        public String get(Object key) {
+            return Objects.toString(this.snapshot.get(key), null);
+        }
+
+        @Override
+        public void forEach(BiConsumer<? super String, ? super String> action) {
+            this.snapshot.forEach((key, value) -> action.accept(key, Objects.toString(value, null)));
+        }
+
+        @Override
+        public Set<Entry<String, String>> entrySet() {
+            Set<Entry<String, String>> entries = this.entrySet;
+            if (entries == null) {
+                entries = new AbstractSet<Entry<String, String>>() {
+                    @Override
+                    public Iterator<Entry<String, String>> iterator() {
+                        Iterator<? extends Entry<String, ?>> iterator = StringView.this.snapshot.entrySet().iterator();
+                        return new Iterator<Entry<String, String>>() {
+                            @Override
+                            public boolean hasNext() {
+                                return iterator.hasNext();
+                            }
+
+                            @Override
+                            public Entry<String, String> next() {
+                                Entry<String, ?> entry = iterator.next();
+                                return new SimpleImmutableEntry<>(entry.getKey(), Objects.toString(entry.getValue(), null));
+                            }
+                        };
+                    }
+
+                    @Override
+                    public int size() {
+                        return StringView.this.snapshot.size();
+                    }
+                };
+                this.entrySet = entries;
+            }
+            return entries;
+        }
+
+    }
+
+}
@@ -24,7 +24,11 @@ import com.woutis.caramel.logging.AsyncLogger;
 import com.woutis.caramel.logging.CaramelLogger;
 import com.woutis.caramel.logging.LoggingContext;
 import com.woutis.caramel.logging.SyncLogger;
+import com.woutis.caramel.logging.ThreadSnapshot;
 import com.woutis.caramel.logging.async.AsyncActor;
+import com.woutis.caramel.logging.async.AsyncHandler;
+import com.woutis.caramel.logging.async.LocationCapture;
+import com.woutis.caramel.logging.async.LocationMode;
 import com.woutis.caramel.logging.level.CustomLevelHandler;
 import com.woutis.caramel.logging.util.Utility;
 import org.apache.logging.log4j.core.Layout;
@@ -34,6 +38,7 @@ import org.apache.logging.log4j.core.config.plugins.Plugin;
 import org.apache.logging.log4j.core.config.plugins.PluginAttribute;
 import org.apache.logging.log4j.core.config.plugins.PluginFactory;
 import org.apache.logging.log4j.core.layout.AbstractStringLayout;
+import org.apache.logging.log4j.util.ReadOnlyStringMap;
 
 import java.lang.reflect.Modifier;
 import java.nio.charset.Charset;
@@ -84,6 +89,9 @@ public class DefaultJsonLayout extends AbstractStringLayout {
         this.withThread = withThread;
         this.withContext = withContext;
         this.gson = pretty ? GSON_PRETTY : GSON;
+        if (withSource) {
+            LocationCapture.require(LocationMode.CALLER);
+        }
     }
 
     @Override
@@ -134,24 +142,28 @@ public class DefaultJsonLayout extends AbstractStringLayout {
         }
 
         if (this.withContext) {
-            Map<String, ?> localPayload = LoggingContext.all();
-            if(Utility.isNotEmpty(localPayload)) {
-                content.putAll(localPayload);
+            // 事件创建时已采集上下文（LoggingContextDataProvider / LoggingContextDataInjector），
+            // 经 Log4j 的 AsyncLogger、AsyncAppender 输出时布局运行在 Log4j 的线程上，当前线程的上下文是空的
+            ReadOnlyStringMap contextData = event.getContextData();
+            if (contextData != null && !contextData.isEmpty()) {
+                contextData.forEach((String key, Object value) -> content.put(key, value));
+            } else {
+                LoggingContext.forEach(content::put);
             }
         }
 
         if (this.withThread) {
-            Thread thread = LoggingContext._sourceThread();
+            ThreadSnapshot thread = LoggingContext._sourceThread();
             if (thread != null) {
-                content.put("threadId", thread.getId());
-                content.put("threadName", thread.getName());
-                content.put("threadPriority", thread.getPriority());
-                content.put("threadGroup", thread.getThreadGroup().getName());
+                content.put("threadId", thread.id());
+                content.put("threadName", thread.name());
+                content.put("threadPriority", thread.priority());
+                content.put("threadGroup", thread.group());
             } else {
                 content.put("threadId", event.getThreadId());
                 content.put("threadName", event.getThreadName());
                 content.put("threadPriority", event.getThreadPriority());
-                content.put("threadGroup", Thread.currentThread().getThreadGroup().getName());
+                content.put("threadGroup", ThreadSnapshot.current().group());
             }
         }
 
@@ -169,7 +181,17 @@ public class DefaultJsonLayout extends AbstractStringLayout {
     private StackTraceElement resolveSource(LogEvent event) {
         StackTraceElement source = event.getSource();
         if (source != null && isWrapper(source.getClassName())) {
-            StackTraceElement[] stackTrace = LoggingContext._sourceStackTrace() != null ? LoggingContext._sourceStackTrace() : new Throwable().getStackTrace();
+            if (LoggingContext._sourceLocation() != null) {
+                return LoggingContext._sourceLocation();
+            }
+            StackTraceElement[] stackTrace = LoggingContext._sourceStackTrace();
+            if (stackTrace == null) {
+                // 异步日志未采集位置时（例如布局创建前已进入队列），消费线程的堆栈指向错误的调用方，宁可不输出
+                if (LocationCapture.deferred()) {
+                    return null;
+                }
+                stackTrace = new Throwable().getStackTrace();
+            }
             StackTraceElement last = null;
             for (int i = stackTrace.length - 1; i > 0; i--) {
                 final String className = stackTrace[i].getClassName();
@@ -205,6 +227,7 @@ public class DefaultJsonLayout extends AbstractStringLayout {
             AsyncLogger.class,
             CaramelLogger.class,
             AsyncActor.class,
+            AsyncHandler.class,
             CustomLevelHandler.class
     };
 
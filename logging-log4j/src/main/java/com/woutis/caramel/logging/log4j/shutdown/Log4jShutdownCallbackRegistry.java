@@ -0,0 +1,47 @@
+/*
+ * Copyright 2018-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.woutis.caramel.logging.log4j.shutdown;
+
+import com.woutis.caramel.logging.async.AsyncShutdown;
+import org.apache.logging.log4j.core.util.DefaultShutdownCallbackRegistry;
+import org.apache.logging.log4j.status.StatusLogger;
+
+/**
+ * Log4j shutdown callback registry draining the Caramel async engine before Log4j stops its appenders.
+ *
+ * <p>Opt-in, since Log4j accepts a single registry and applications such as Spring Boot may install their own: set
+ * {@code log4j.shutdownCallbackRegistry} to this class in the application's {@code log4j2.component.properties} or as a
+ * system property. It drains the engine even when {@code caramel.logging.async.shutdown-hook} is {@code false}.
+ *
+ * @author Kweny
+ * @since 0.0.1
+ */
+public class Log4jShutdownCallbackRegistry extends DefaultShutdownCallbackRegistry {
+
+    @Override
+    public void run() {
+        try {
+            AsyncShutdown.drain();
+        } catch (Throwable t) {
+            // Log4j 创建本类时尚未初始化完毕，也即将停止，只能通过 StatusLogger 报告错误
+            StatusLogger.getLogger().error("[Caramel Logging] AsyncSystem failed to drain before Log4j shutdown.", t);
+        }
+        super.run();
+    }
+
+}
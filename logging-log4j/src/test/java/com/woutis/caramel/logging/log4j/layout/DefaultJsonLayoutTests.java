@@ -0,0 +1,145 @@
+/*
+ * Copyright 2018-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.woutis.caramel.logging.log4j.layout;
+
+import com.google.gson.Gson;
+import com.woutis.caramel.logging.LoggingContext;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.core.Layout;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.LoggerContext;
+import org.apache.logging.log4j.core.appender.AbstractAppender;
+import org.apache.logging.log4j.core.async.AsyncLoggerConfig;
+import org.apache.logging.log4j.core.config.Configuration;
+import org.apache.logging.log4j.core.config.LoggerConfig;
+import org.apache.logging.log4j.core.config.Property;
+import org.apache.logging.log4j.core.impl.ContextDataFactory;
+import org.apache.logging.log4j.core.impl.Log4jLogEvent;
+import org.apache.logging.log4j.message.SimpleMessage;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * Tests for {@link DefaultJsonLayout}, writing through the Log4j {@code AsyncLogger} configured in
+ * {@code log4j2-test.xml} so that the layout runs on a Log4j thread.
+ *
+ * @author Kweny
+ * @since 0.0.1
+ */
+class DefaultJsonLayoutTests {
+
+    private static final String ASYNC_LOGGER = "caramel.test.async";
+
+    private static DefaultJsonLayout layout;
+    private static Capture capture;
+
+    @BeforeAll
+    static void attach() {
+        LoggerContext context = (LoggerContext) LogManager.getContext(false);
+        Configuration config = context.getConfiguration();
+        layout = DefaultJsonLayout.createLayout(StandardCharsets.UTF_8, true, false, false, true, false);
+        capture = new Capture(layout);
+        capture.start();
+        config.addAppender(capture);
+        config.getLoggerConfig(ASYNC_LOGGER).addAppender(capture, null, null);
+        context.updateLoggers();
+    }
+
+    @AfterAll
+    static void detach() {
+        LoggerContext context = (LoggerContext) LogManager.getContext(false);
+        context.getConfiguration().getLoggerConfig(ASYNC_LOGGER).removeAppender(capture.getName());
+        context.updateLoggers();
+        capture.stop();
+    }
+
+    @AfterEach
+    void release() {
+        LoggingContext.release();
+    }
+
+    @Test
+    void contextReachesTheOutputOfLog4jAsyncLogger() throws InterruptedException {
+        LoggerContext context = (LoggerContext) LogManager.getContext(false);
+        LoggerConfig loggerConfig = context.getConfiguration().getLoggerConfig(ASYNC_LOGGER);
+        assertThat(loggerConfig, instanceOf(AsyncLoggerConfig.class));
+
+        Logger logger = LogManager.getLogger(ASYNC_LOGGER);
+        LoggingContext.set("requestId", "r-1");
+        LoggingContext.set("userId", 42);
+        logger.info("async hello");
+        // 之后当前线程的修改不应影响已创建的事件
+        LoggingContext.clear();
+
+        String line = capture.lines.poll(10, TimeUnit.SECONDS);
+        assertThat(line, notNullValue());
+        assertThat(capture.threads.poll(), not(Thread.currentThread().getName()));
+        Map<?, ?> json = new Gson().fromJson(line, Map.class);
+        assertThat(json.get("message"), is("async hello"));
+        assertThat(json.get("requestId"), is("r-1"));
+        assertThat(json.containsKey("userId"), is(true));
+    }
+
+    @Test
+    void fallsBackToTheThreadContextWhenTheEventCarriesNone() {
+        LoggingContext.set("requestId", "r-2");
+        LogEvent event = Log4jLogEvent.newBuilder()
+                .setLoggerName("caramel.test.sync")
+                .setLevel(Level.INFO)
+                .setMessage(new SimpleMessage("sync hello"))
+                .setContextData(ContextDataFactory.emptyFrozenContextData())
+                .build();
+
+        Map<?, ?> json = new Gson().fromJson(layout.toSerializable(event), Map.class);
+        assertThat(json.get("message"), is("sync hello"));
+        assertThat(json.get("requestId"), is("r-2"));
+    }
+
+    /** 记录布局输出及输出线程的 appender */
+    private static final class Capture extends AbstractAppender {
+
+        final BlockingQueue<String> lines = new LinkedBlockingQueue<>();
+        final BlockingQueue<String> threads = new LinkedBlockingQueue<>();
+
+        Capture(Layout<? extends Serializable> layout) {
+            super("Capture", null, layout, true, Property.EMPTY_ARRAY);
+        }
+
+        @Override
+        public void append(LogEvent event) {
+            this.threads.add(Thread.currentThread().getName());
+            this.lines.add(((DefaultJsonLayout) getLayout()).toSerializable(event));
+        }
+
+    }
+
+}
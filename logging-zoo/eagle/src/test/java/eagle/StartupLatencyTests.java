@@ -0,0 +1,72 @@
+/*
+ * Copyright 2018-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eagle;
+
+import com.woutis.caramel.logging.AsyncLogger;
+import com.woutis.caramel.logging.CaramelLogger;
+import com.woutis.caramel.logging.async.AsyncMetrics;
+import com.woutis.caramel.logging.async.AsyncSystem;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * Startup latency of the async path: logs a burst of events right at JVM start, while the async engine is still
+ * booting, and fails when any call blocks the caller longer than {@code -Dthreshold-millis} (default 200).
+ *
+ * <p>Must be the first test to touch the {@link AsyncSystem} in its JVM.
+ *
+ * @author Kweny
+ * @since 0.0.1
+ */
+class StartupLatencyTests {
+
+    private static final int COUNT = 1000;
+
+    @Test
+    void earlyEventsDoNotBlockCallers() {
+        long thresholdNanos = TimeUnit.MILLISECONDS.toNanos(Long.getLong("threshold-millis", 200L));
+
+        AsyncLogger logger = CaramelLogger.getAsyncLogger(StartupLatencyTests.class);
+
+        long first = 0;
+        long max = 0;
+        for (int i = 0; i < COUNT; i++) {
+            long begin = System.nanoTime();
+            logger.info("startup event {}", i);
+            long elapsed = System.nanoTime() - begin;
+            if (i == 0) {
+                first = elapsed;
+            } else {
+                max = Math.max(max, elapsed);
+            }
+        }
+
+        assertThat("first call blocked the caller", first, lessThanOrEqualTo(thresholdNanos));
+        assertThat("a later call blocked the caller", max, lessThanOrEqualTo(thresholdNanos));
+
+        AsyncMetrics metrics = AsyncSystem.instance().metrics();
+        assertThat(AsyncSystem.instance().flush(Duration.ofSeconds(30)), is(true));
+        assertThat(metrics.getEnqueued(), is((long) COUNT));
+        assertThat(metrics.getDiscarded(), is(0L));
+    }
+
+}